@@ -0,0 +1,385 @@
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.zip.CRC32C;
+
+/**
+ * Versioned binary graph file, loaded by memory-mapping its blocks.
+ * All values are little-endian.  Layout:
+ *
+ *   header (64 bytes)   magic "SMMB", version, node count, edge count,
+ *                       label block size, CRC-32C of everything after
+ *                       the header
+ *   xs, ys              node coordinates, int[n] each
+ *   label offsets       long[n+1] into the label block
+ *   labels              UTF-8 bytes of all labels, end to end
+ *   edge offsets        int[n+1]: edges are grouped by head (CSR), and
+ *                       node i's edges are entries offsets[i] until
+ *                       offsets[i+1] of the next two arrays
+ *   edge tails          int[m]
+ *   edge weights        double[m]
+ *   edge positions      int[m]: where each entry came in the map's own
+ *                       edge order, so reading gives the edges back in
+ *                       that order (version 2 on; version 1 files are
+ *                       read in grouped order)
+ *
+ * Each block starts on an 8 byte boundary and must be under 2 GB.
+ * Keeping the edge order means a route index saved for a map still
+ * matches it after the map is converted between formats.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class BinaryGraphFile {
+
+    /** "SMMB" read as a little-endian int */
+    static final int MAGIC = 0x424D4D53;
+
+    /** Current format version */
+    static final int VERSION = 2;
+
+    /** Version without the edge positions block, still readable */
+    static final int VERSION_GROUPED = 1;
+
+    /** Size of the header */
+    static final int HEADER_SIZE = 64;
+
+    /** Size of the write buffer */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Returns true if the file starts with the binary format's magic number */
+    public static boolean isBinary(Path path) throws IOException {
+	try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+	    ByteBuffer buf = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+	    while ((buf.hasRemaining())&&(channel.read(buf) >= 0)) {
+	    }
+	    return (!buf.hasRemaining())&&(buf.getInt(0) == MAGIC);
+	}
+    }
+
+    /** Writes a map to a binary file */
+    public static void write(MapData map, Path path) throws IOException {
+	int n = map.numNodes();
+	int m = map.numEdges();
+	// Group edges by head, keeping their order within each group
+	int[] offsets = new int[n+1];
+	for (int j = 0; j < m; j++) {
+	    offsets[map.getHead(j)+1]++;
+	}
+	for (int i = 0; i < n; i++) {
+	    offsets[i+1] += offsets[i];
+	}
+	int[] order = new int[m];
+	int[] fill = Arrays.copyOf(offsets, n);
+	for (int j = 0; j < m; j++) {
+	    order[fill[map.getHead(j)]++] = j;
+	}
+	byte[][] labels = new byte[n][];
+	long labelBytes = 0;
+	for (int i = 0; i < n; i++) {
+	    labels[i] = map.getLabel(i).getBytes(StandardCharsets.UTF_8);
+	    labelBytes += labels[i].length;
+	}
+	checkBlock(labelBytes);
+	checkBlock(8L*(n+1));
+	checkBlock(8L*m);
+
+	try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+	    BlockWriter out = new BlockWriter(channel);
+	    for (int i = 0; i < n; i++) {
+		out.putInt(map.getX(i));
+	    }
+	    out.align();
+	    for (int i = 0; i < n; i++) {
+		out.putInt(map.getY(i));
+	    }
+	    out.align();
+	    long offset = 0;
+	    out.putLong(0);
+	    for (int i = 0; i < n; i++) {
+		offset += labels[i].length;
+		out.putLong(offset);
+	    }
+	    for (int i = 0; i < n; i++) {
+		out.putBytes(labels[i]);
+	    }
+	    out.align();
+	    for (int i = 0; i <= n; i++) {
+		out.putInt(offsets[i]);
+	    }
+	    out.align();
+	    for (int k = 0; k < m; k++) {
+		out.putInt(map.getTail(order[k]));
+	    }
+	    out.align();
+	    for (int k = 0; k < m; k++) {
+		out.putDouble(map.getWeight(order[k]));
+	    }
+	    out.align();
+	    for (int k = 0; k < m; k++) {
+		out.putInt(order[k]);
+	    }
+	    out.align();
+	    out.flush();
+	    // Header last, once the checksum is known
+	    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	    header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(m).putLong(labelBytes).putLong(out.checksum());
+	    header.clear();
+	    writeFully(channel, header, 0);
+	    channel.force(true);
+	}
+    }
+
+    /** Reads a binary file into a new map, checking its checksum */
+    public static MapData read(Path path) throws IOException {
+	try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+	    long size = channel.size();
+	    if (size < HEADER_SIZE) {
+		throw new GraphFormatException("file too short for a binary graph header");
+	    }
+	    ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	    if (header.getInt(0) != MAGIC) {
+		throw new GraphFormatException("not a binary graph file");
+	    }
+	    int version = header.getInt(4);
+	    if ((version != VERSION)&&(version != VERSION_GROUPED)) {
+		throw new GraphFormatException("unsupported binary graph version "+version);
+	    }
+	    int n = header.getInt(8);
+	    int m = header.getInt(12);
+	    long labelBytes = header.getLong(16);
+	    long checksum = header.getLong(24);
+	    if ((n < 0)||(m < 0)||(labelBytes < 0)) {
+		throw new GraphFormatException("corrupt binary graph header");
+	    }
+	    // Block positions follow from the counts
+	    long[] sizes = (version == VERSION_GROUPED)
+		? new long[] { 4L*n, 4L*n, 8L*(n+1), labelBytes, 4L*(n+1), 4L*m, 8L*m }
+		: new long[] { 4L*n, 4L*n, 8L*(n+1), labelBytes, 4L*(n+1), 4L*m, 8L*m, 4L*m };
+	    long[] starts = new long[sizes.length];
+	    long position = HEADER_SIZE;
+	    for (int b = 0; b < sizes.length; b++) {
+		checkBlock(sizes[b]);
+		starts[b] = position;
+		position += align(sizes[b]);
+	    }
+	    if (position != size) {
+		throw new GraphFormatException("binary graph file is truncated or has trailing data");
+	    }
+	    ByteBuffer[] blocks = new ByteBuffer[sizes.length];
+	    CRC32C crc = new CRC32C();
+	    for (int b = 0; b < sizes.length; b++) {
+		long mapped = align(sizes[b]);
+		blocks[b] = channel.map(FileChannel.MapMode.READ_ONLY, starts[b], mapped).order(ByteOrder.LITTLE_ENDIAN);
+		crc.update(blocks[b].duplicate());
+	    }
+	    if (crc.getValue() != checksum) {
+		throw new GraphFormatException("checksum mismatch: binary graph file is corrupt");
+	    }
+
+	    MapData map = new MapData(n, m);
+	    int[] xs = new int[n];
+	    int[] ys = new int[n];
+	    blocks[0].asIntBuffer().get(xs);
+	    blocks[1].asIntBuffer().get(ys);
+	    LongBuffer labelOffsets = blocks[2].asLongBuffer();
+	    ByteBuffer labels = blocks[3];
+	    byte[] scratch = new byte[64];
+	    for (int i = 0; i < n; i++) {
+		long from = labelOffsets.get(i);
+		long to = labelOffsets.get(i+1);
+		if ((from < 0)||(to < from)||(to > labelBytes)) {
+		    throw new GraphFormatException("corrupt label table");
+		}
+		int length = (int)(to-from);
+		if (scratch.length < length) {
+		    scratch = new byte[Math.max(length, 2*scratch.length)];
+		}
+		labels.position((int)from);
+		labels.get(scratch, 0, length);
+		map.addNode(new String(scratch, 0, length, StandardCharsets.UTF_8), xs[i], ys[i]);
+	    }
+	    IntBuffer offsets = blocks[4].asIntBuffer();
+	    IntBuffer tails = blocks[5].asIntBuffer();
+	    DoubleBuffer weights = blocks[6].asDoubleBuffer();
+	    IntBuffer positions = (version == VERSION_GROUPED) ? null : blocks[7].asIntBuffer();
+	    if ((offsets.get(0) != 0)||(offsets.get(n) != m)) {
+		throw new GraphFormatException("corrupt edge offsets");
+	    }
+	    // Entry k of the grouped arrays goes back to position order[k]
+	    int[] order = new int[m];
+	    int[] heads = new int[m];
+	    boolean[] placed = new boolean[m];
+	    for (int i = 0; i < n; i++) {
+		int from = offsets.get(i);
+		int to = offsets.get(i+1);
+		if ((from < 0)||(to < from)||(to > m)) {
+		    throw new GraphFormatException("corrupt edge offsets");
+		}
+		for (int k = from; k < to; k++) {
+		    int tail = tails.get(k);
+		    if ((tail < 0)||(tail >= n)) {
+			throw new GraphFormatException("corrupt edge tail");
+		    }
+		    int j = (positions == null) ? k : positions.get(k);
+		    if ((j < 0)||(j >= m)||(placed[j])) {
+			throw new GraphFormatException("corrupt edge positions");
+		    }
+		    placed[j] = true;
+		    order[j] = k;
+		    heads[k] = i;
+		}
+	    }
+	    for (int j = 0; j < m; j++) {
+		int k = order[j];
+		map.addEdge(heads[k], tails.get(k), weights.get(k));
+	    }
+	    return map;
+	}
+    }
+
+    /** Converts a text graph file to a binary one */
+    public static void textToBinary(Path text, Path binary) throws IOException {
+	write(GraphLoader.read(text), binary);
+    }
+
+    /** Converts a binary graph file to a text one */
+    public static void binaryToText(Path binary, Path text) throws IOException {
+	GraphWriter.writeText(read(binary), text);
+    }
+
+    /** Command line converter: to-binary|to-text input output */
+    public static void main(String[] args) {
+	if ((args.length != 3)||((!args[0].equals("to-binary"))&&(!args[0].equals("to-text")))) {
+	    System.err.println("Usage: java BinaryGraphFile to-binary|to-text input output");
+	    System.exit(2);
+	}
+	try {
+	    if (args[0].equals("to-binary")) {
+		textToBinary(Paths.get(args[1]), Paths.get(args[2]));
+	    } else {
+		binaryToText(Paths.get(args[1]), Paths.get(args[2]));
+	    }
+	} catch (IOException e) {
+	    System.err.println("Problem converting "+args[1]+": "+e.getMessage());
+	    System.exit(1);
+	}
+    }
+
+    /** Rejects a block too large to map in one piece */
+    private static void checkBlock(long size) throws GraphFormatException {
+	if (size > Integer.MAX_VALUE) {
+	    throw new GraphFormatException("graph too large for the binary format");
+	}
+    }
+
+    /** Rounds a size up to a multiple of 8 */
+    private static long align(long size) {
+	return (size+7) & ~7L;
+    }
+
+    /** Writes a whole buffer at a file position */
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+	while (buf.hasRemaining()) {
+	    position += channel.write(buf, position);
+	}
+    }
+
+    /**
+     * Buffered little-endian writer for the blocks after the header,
+     * keeping a running checksum of everything written
+     */
+    private static class BlockWriter {
+	/** Channel written to */
+	private FileChannel channel;
+
+	/** Buffer of bytes not yet written */
+	private ByteBuffer buf;
+
+	/** Checksum of the bytes written so far */
+	private CRC32C crc;
+
+	/** File position of the start of the buffer */
+	private long position;
+
+	/** Bytes written since the header */
+	private long written;
+
+	/** Constructs a writer starting just after the header */
+	BlockWriter(FileChannel channel) {
+	    this.channel = channel;
+	    this.buf = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	    this.crc = new CRC32C();
+	    this.position = HEADER_SIZE;
+	    this.written = 0;
+	}
+
+	/** Writes an int */
+	void putInt(int v) throws IOException {
+	    room(4);
+	    this.buf.putInt(v);
+	    this.written += 4;
+	}
+
+	/** Writes a long */
+	void putLong(long v) throws IOException {
+	    room(8);
+	    this.buf.putLong(v);
+	    this.written += 8;
+	}
+
+	/** Writes a double */
+	void putDouble(double v) throws IOException {
+	    room(8);
+	    this.buf.putDouble(v);
+	    this.written += 8;
+	}
+
+	/** Writes raw bytes */
+	void putBytes(byte[] bytes) throws IOException {
+	    int off = 0;
+	    while (off < bytes.length) {
+		room(1);
+		int len = Math.min(this.buf.remaining(), bytes.length-off);
+		this.buf.put(bytes, off, len);
+		off += len;
+	    }
+	    this.written += bytes.length;
+	}
+
+	/** Pads with zeros to an 8 byte boundary */
+	void align() throws IOException {
+	    while ((this.written & 7) != 0) {
+		room(1);
+		this.buf.put((byte)0);
+		this.written++;
+	    }
+	}
+
+	/** Makes sure the buffer has room for the given number of bytes */
+	private void room(int bytes) throws IOException {
+	    if (this.buf.remaining() < bytes) {
+		flush();
+	    }
+	}
+
+	/** Writes out the buffer, adding it to the checksum */
+	void flush() throws IOException {
+	    this.buf.flip();
+	    this.crc.update(this.buf.duplicate());
+	    long start = this.position;
+	    writeFully(this.channel, this.buf, start);
+	    this.position = start+this.buf.limit();
+	    this.buf.clear();
+	}
+
+	/** Returns the checksum of everything flushed */
+	long checksum() {
+	    return this.crc.getValue();
+	}
+    }
+}
@@ -0,0 +1,245 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Level-synchronous parallel breadth-first search over a compact view,
+ * with direction optimization.  Each level is found from the one before
+ * either top-down (frontier nodes claim unvisited neighbors) or, once
+ * the frontier has more arcs than a fraction of the unexplored part of
+ * the graph, bottom-up (unvisited nodes look for a neighbor in the
+ * frontier, stopping at the first).  Visited nodes are tracked in an
+ * atomic bitset.  Small frontiers are expanded on the calling thread,
+ * so long thin graphs don't pay for forking at every level.
+ *
+ * Results are levels (hop counts) and a breadth-first order.  Within a
+ * level the order depends on scheduling when the level was expanded in
+ * parallel.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class BreadthFirstSearch<V,E> {
+
+    /** Go bottom-up when frontier arcs exceed unexplored arcs divided by this */
+    private static final int ALPHA = 14;
+
+    /** Go back top-down when the frontier is smaller than the node count divided by this */
+    private static final int BETA = 24;
+
+    /** Frontiers smaller than this are expanded without forking */
+    private static final int SEQUENTIAL_SIZE = 1024;
+
+    /** Nodes handled by one task before splitting stops */
+    private static final int LEAF_SIZE = 512;
+
+    /** View searched */
+    private CompactGraph<V,E> graph;
+
+    /** Pool the levels are expanded on */
+    private ForkJoinPool pool;
+
+    /** Visited bits, 64 nodes per word */
+    private AtomicLongArray visited;
+
+    /** Level of each node, or -1 if not reached */
+    private int[] levels;
+
+    /** Nodes in breadth-first order */
+    private int[] order;
+
+    /** Number of nodes reached */
+    private int reached;
+
+    /** Where each level starts in the order; the last entry is the number reached */
+    private int[] levelStarts;
+
+    /** Constructs a search over a view */
+    public BreadthFirstSearch(CompactGraph<V,E> graph, ForkJoinPool pool) {
+	this.graph = graph;
+	this.pool = pool;
+    }
+
+    /** Searches from the node with the given id, replacing earlier results */
+    public void run(int source) {
+	int n = this.graph.numNodes();
+	this.visited = new AtomicLongArray((n+63) >>> 6);
+	this.levels = new int[n];
+	Arrays.fill(this.levels, -1);
+	this.order = new int[n];
+	IntList starts = new IntList();
+	claim(source);
+	this.levels[source] = 0;
+	this.order[0] = source;
+	this.reached = 1;
+	starts.add(0);
+	long unexplored = this.graph.numArcs();
+	boolean bottomUp = false;
+	int depth = 0;
+	int first = 0;
+	while (first < this.reached) {
+	    int last = this.reached;
+	    int size = last-first;
+	    long frontierArcs = 0;
+	    for (int k = first; k < last; k++) {
+		frontierArcs += this.graph.degree(this.order[k]);
+	    }
+	    unexplored -= frontierArcs;
+	    // Direction: bottom-up while the frontier is a big part of what's left
+	    if (bottomUp) {
+		bottomUp = size >= n/BETA;
+	    } else {
+		bottomUp = (frontierArcs > unexplored/ALPHA)&&(size >= n/BETA);
+	    }
+	    IntList next;
+	    if (bottomUp) {
+		next = this.pool.invoke(new BottomUp(depth, 0, n));
+	    } else if (size < SEQUENTIAL_SIZE) {
+		next = topDown(depth, first, last);
+	    } else {
+		next = this.pool.invoke(new TopDown(depth, first, last));
+	    }
+	    System.arraycopy(next.values, 0, this.order, last, next.size);
+	    this.reached += next.size;
+	    first = last;
+	    depth++;
+	    if (this.reached > last) {
+		starts.add(last);
+	    }
+	}
+	starts.add(this.reached);
+	this.levelStarts = starts.toArray();
+    }
+
+    /** Returns the level of each node by id (-1 if not reached) */
+    public int[] getLevels() {
+	return this.levels;
+    }
+
+    /** Returns the ids of the nodes reached, in breadth-first order */
+    public int[] getOrder() {
+	return Arrays.copyOf(this.order, this.reached);
+    }
+
+    /** Returns where each level starts in the order, plus one entry for the end */
+    public int[] getLevelStarts() {
+	return this.levelStarts;
+    }
+
+    /** Marks a node visited; returns false if it already was */
+    private boolean claim(int v) {
+	int word = v >>> 6;
+	long bit = 1L << (v & 63);
+	long current = this.visited.get(word);
+	while ((current & bit) == 0) {
+	    if (this.visited.compareAndSet(word, current, current|bit)) {
+		return true;
+	    }
+	    current = this.visited.get(word);
+	}
+	return false;
+    }
+
+    /** Returns true if a node has been visited */
+    private boolean isVisited(int v) {
+	return (this.visited.get(v >>> 6) & (1L << (v & 63))) != 0;
+    }
+
+    /** Expands frontier entries first until last top-down, returning the new nodes */
+    private IntList topDown(int depth, int first, int last) {
+	IntList found = new IntList();
+	for (int k = first; k < last; k++) {
+	    int u = this.order[k];
+	    for (int a = this.graph.firstArc(u); a < this.graph.endArc(u); a++) {
+		int v = this.graph.target(a);
+		if ((!isVisited(v))&&(claim(v))) {
+		    this.levels[v] = depth+1;
+		    found.add(v);
+		}
+	    }
+	}
+	return found;
+    }
+
+    /** Finds unvisited nodes lo until hi with a neighbor at the given depth */
+    private IntList bottomUp(int depth, int lo, int hi) {
+	IntList found = new IntList();
+	for (int v = lo; v < hi; v++) {
+	    if (isVisited(v)) {
+		continue;
+	    }
+	    for (int a = this.graph.firstArc(v); a < this.graph.endArc(v); a++) {
+		if (this.levels[this.graph.target(a)] == depth) {
+		    claim(v);
+		    this.levels[v] = depth+1;
+		    found.add(v);
+		    break;
+		}
+	    }
+	}
+	return found;
+    }
+
+    /** Top-down expansion of a range of the frontier, in parallel halves */
+    private class TopDown extends RecursiveTask<IntList> {
+	private static final long serialVersionUID = 1L;
+
+	/** Depth of the frontier */
+	private final int depth;
+
+	/** Range of the order being expanded, lo until hi */
+	private final int lo, hi;
+
+	/** Constructs a task for order entries lo until hi */
+	TopDown(int depth, int lo, int hi) {
+	    this.depth = depth;
+	    this.lo = lo;
+	    this.hi = hi;
+	}
+
+	/** Expands the range, joining the halves' results in order */
+	protected IntList compute() {
+	    if (this.hi-this.lo <= LEAF_SIZE) {
+		return topDown(this.depth, this.lo, this.hi);
+	    }
+	    int mid = (this.lo+this.hi) >>> 1;
+	    TopDown right = new TopDown(this.depth, mid, this.hi);
+	    right.fork();
+	    IntList left = new TopDown(this.depth, this.lo, mid).compute();
+	    left.addAll(right.join());
+	    return left;
+	}
+    }
+
+    /** Bottom-up step over a range of node ids, in parallel halves */
+    private class BottomUp extends RecursiveTask<IntList> {
+	private static final long serialVersionUID = 1L;
+
+	/** Depth of the frontier */
+	private final int depth;
+
+	/** Range of node ids, lo until hi */
+	private final int lo, hi;
+
+	/** Constructs a task for node ids lo until hi */
+	BottomUp(int depth, int lo, int hi) {
+	    this.depth = depth;
+	    this.lo = lo;
+	    this.hi = hi;
+	}
+
+	/** Checks the range, joining the halves' results in order */
+	protected IntList compute() {
+	    if (this.hi-this.lo <= 8*LEAF_SIZE) {
+		return bottomUp(this.depth, this.lo, this.hi);
+	    }
+	    int mid = (this.lo+this.hi) >>> 1;
+	    BottomUp right = new BottomUp(this.depth, mid, this.hi);
+	    right.fork();
+	    IntList left = new BottomUp(this.depth, this.lo, mid).compute();
+	    left.addAll(right.join());
+	    return left;
+	}
+    }
+}
@@ -0,0 +1,122 @@
+import java.util.*;
+
+/**
+ * Immutable compressed sparse row (CSR) view of a Graph, for algorithms
+ * that walk adjacency many times.  Nodes get dense ids 0..numNodes()-1
+ * (their master list index when the view was taken).  The arcs of node
+ * i are the slots offsets[i] until offsets[i+1] of the target, weight
+ * and edge arrays; each undirected edge appears once from each end.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class CompactGraph<V,E> {
+
+    /** Nodes by id */
+    private ArrayList<Graph<V,E>.Node> nodes;
+
+    /** Edges by edge id */
+    private ArrayList<Graph<V,E>.Edge> edges;
+
+    /** Start of each node's arcs; offsets[numNodes()] is the arc count */
+    private int[] offsets;
+
+    /** Node id at the far end of each arc */
+    private int[] targets;
+
+    /** Weight of each arc */
+    private double[] weights;
+
+    /** Edge id of each arc */
+    private int[] arcEdges;
+
+    /** Constructor, only called by Graph.freeze() and GraphSnapshot */
+    CompactGraph (ArrayList<Graph<V,E>.Node> nodes, ArrayList<Graph<V,E>.Edge> edges, int[] offsets, int[] targets, double[] weights, int[] arcEdges) {
+	this.nodes = nodes;
+	this.edges = edges;
+	this.offsets = offsets;
+	this.targets = targets;
+	this.weights = weights;
+	this.arcEdges = arcEdges;
+    }
+
+    /** Returns number of nodes */
+    public int numNodes() {
+	return this.nodes.size();
+    }
+
+    /** Returns number of (undirected) edges */
+    public int numEdges() {
+	return this.edges.size();
+    }
+
+    /** Returns number of arcs, twice the number of edges */
+    public int numArcs() {
+	return this.targets.length;
+    }
+
+    /** Returns the node with the given id */
+    public Graph<V,E>.Node getNode(int id) {
+	return this.nodes.get(id);
+    }
+
+    /** Returns the edge with the given edge id */
+    public Graph<V,E>.Edge getEdge(int edgeId) {
+	return this.edges.get(edgeId);
+    }
+
+    /** Returns the id of a node, or -1 if it isn't in this view */
+    public int idOf(Graph<V,E>.Node node) {
+	int i = node.getIndex();
+	if ((i < 0)||(i >= this.nodes.size())||(this.nodes.get(i) != node)) {
+	    i = this.nodes.indexOf(node);
+	}
+	return i;
+    }
+
+    /** Returns the first arc of a node */
+    public int firstArc(int id) {
+	return this.offsets[id];
+    }
+
+    /** Returns one past the last arc of a node */
+    public int endArc(int id) {
+	return this.offsets[id+1];
+    }
+
+    /** Returns number of arcs leaving a node */
+    public int degree(int id) {
+	return this.offsets[id+1]-this.offsets[id];
+    }
+
+    /** Returns the node id at the far end of an arc */
+    public int target(int arc) {
+	return this.targets[arc];
+    }
+
+    /** Returns the weight of an arc */
+    public double weight(int arc) {
+	return this.weights[arc];
+    }
+
+    /** Returns the edge id of an arc */
+    public int edgeOf(int arc) {
+	return this.arcEdges[arc];
+    }
+
+    /** Returns the arc from one node to another, or -1 if they aren't neighbors */
+    public int arcBetween(int from, int to) {
+	for (int a = this.offsets[from]; a < this.offsets[from+1]; a++) {
+	    if (this.targets[a] == to) {
+		return a;
+	    }
+	}
+	return -1;
+    }
+
+    /** Returns the node list shared with results built on this view */
+    ArrayList<Graph<V,E>.Node> nodeList() {
+	return this.nodes;
+    }
+}
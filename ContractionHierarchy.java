@@ -0,0 +1,818 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.zip.CRC32C;
+
+/**
+ * Contraction Hierarchies index for fast shortest path queries on a
+ * graph that rarely changes.  Preprocessing ranks the nodes and
+ * "contracts" them in rank order: each contracted node is taken out
+ * of the graph, and a shortcut edge is added between two of its
+ * neighbors whenever the path through it is the only shortest one
+ * (checked with a bounded witness search).  Nodes are ordered by edge
+ * difference (shortcuts added minus edges removed) plus the number of
+ * neighbors already contracted.  A query then runs Dijkstra from both
+ * ends along edges to higher ranked nodes only, which settles very few
+ * nodes, and unpacks the shortcuts on the best path into real edges.
+ *
+ * Preprocessing is parallel: each round contracts a set of nodes that
+ * are local priority minima (so no two are neighbors), with their
+ * witness searches spread over the common fork-join pool.
+ *
+ * The index refers to nodes and edges by their master list indices in
+ * the compact view it was built from.  It is only valid while the
+ * graph still has the same nodes, edges and weights; isValidFor()
+ * checks this.  Queries may run on several threads at once.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class ContractionHierarchy<V,E> {
+
+    /** "SMMC" read as a little-endian int */
+    static final int MAGIC = 0x434D4D53;
+
+    /** Current file format version */
+    static final int VERSION = 1;
+
+    /** Size of the file header */
+    static final int HEADER_SIZE = 32;
+
+    /** Most nodes a witness search settles before giving up (and adding the shortcut) */
+    private static final int WITNESS_LIMIT = 500;
+
+    /** Witness search limit while estimating priorities */
+    private static final int ESTIMATE_LIMIT = 50;
+
+    /** View of the graph the index belongs to */
+    private volatile CompactGraph<V,E> view;
+
+    /** Fingerprint of the view's nodes, edges and weights */
+    private long fingerprint;
+
+    /** Contraction rank of each node */
+    private int[] rank;
+
+    /** Start of each node's upward arcs; upOffsets[n] is the arc count */
+    private int[] upOffsets;
+
+    /** Higher ranked node at the far end of each upward arc */
+    private int[] upTargets;
+
+    /** Weight of each upward arc */
+    private double[] upWeights;
+
+    /** Edge id of an upward arc that is a real edge, or -1 for a shortcut */
+    private int[] upEdges;
+
+    /** Node a shortcut bypasses, or -1 for a real edge */
+    private int[] upMiddles;
+
+    /**
+     * Query state not in use by any thread.  A query borrows one and
+     * puts it back, so threads that come and go (one per connection in
+     * a server, say) share a few instead of each allocating its own.
+     */
+    private ConcurrentLinkedQueue<Search> idleSearches;
+
+    /** Constructor, only called by build() and load() */
+    ContractionHierarchy (CompactGraph<V,E> view, long fingerprint, int[] rank, int[] upOffsets, int[] upTargets, double[] upWeights, int[] upEdges, int[] upMiddles) {
+	this.view = view;
+	this.fingerprint = fingerprint;
+	this.rank = rank;
+	this.upOffsets = upOffsets;
+	this.upTargets = upTargets;
+	this.upWeights = upWeights;
+	this.upEdges = upEdges;
+	this.upMiddles = upMiddles;
+	this.idleSearches = new ConcurrentLinkedQueue<Search>();
+    }
+
+    /** Builds an index for a graph as it is now */
+    public static <V,E> ContractionHierarchy<V,E> build(Graph<V,E> graph) {
+	return build(graph.freeze());
+    }
+
+    /**
+     * Builds an index for a compact view.  Views are immutable, so this
+     * can run on a background thread while the graph goes on changing.
+     */
+    public static <V,E> ContractionHierarchy<V,E> build(CompactGraph<V,E> view) {
+	return new Contraction(view).run(view);
+    }
+
+    /** Returns number of shortcut edges the index added */
+    public int numShortcuts() {
+	int count = 0;
+	for (int m : this.upMiddles) {
+	    if (m >= 0) {
+		count++;
+	    }
+	}
+	return count;
+    }
+
+    /** Returns the contraction rank of a node (higher is more important) */
+    public int getRank(Graph<V,E>.Node node) {
+	return this.rank[id(node)];
+    }
+
+    /**
+     * Returns true if the index still matches a graph: same nodes and
+     * edges in the same order, with the same weights.  Moving nodes or
+     * other changes that leave those alone don't invalidate it.
+     */
+    public boolean isValidFor(Graph<V,E> graph) {
+	CompactGraph<V,E> current = graph.freeze();
+	if (current == this.view) {
+	    return true;
+	}
+	if (fingerprint(current) == this.fingerprint) {
+	    // Same structure, newer view: answer with the graph's current objects
+	    this.view = current;
+	    return true;
+	}
+	return false;
+    }
+
+    /** Returns the shortest path cost between two nodes, or Double.MAX_VALUE if unreachable */
+    public double distance(Graph<V,E>.Node start, Graph<V,E>.Node target) {
+	int source = id(start);
+	int goal = id(target);
+	Search s = borrow();
+	try {
+	    s.run(source, goal);
+	    return s.best;
+	} finally {
+	    this.idleSearches.add(s);
+	}
+    }
+
+    /** Returns the nodes of a shortest path from start to target, or null if unreachable */
+    public ArrayList<Graph<V,E>.Node> path(Graph<V,E>.Node start, Graph<V,E>.Node target) {
+	int[] ids = unpack(id(start), id(target), null);
+	if (ids == null) {
+	    return null;
+	}
+	ArrayList<Graph<V,E>.Node> nodes = new ArrayList<Graph<V,E>.Node>(ids.length);
+	for (int i : ids) {
+	    nodes.add(this.view.getNode(i));
+	}
+	return nodes;
+    }
+
+    /** Returns the edges of a shortest path from start to target, or null if unreachable */
+    public ArrayList<Graph<V,E>.Edge> route(Graph<V,E>.Node start, Graph<V,E>.Node target) {
+	ArrayList<Graph<V,E>.Edge> edges = new ArrayList<Graph<V,E>.Edge>();
+	return (unpack(id(start), id(target), edges) == null) ? null : edges;
+    }
+
+    /** Returns idle query state, or new state if every one is in use */
+    private Search borrow() {
+	Search s = this.idleSearches.poll();
+	return (s == null) ? new Search(this.rank.length) : s;
+    }
+
+    /** Returns a node's id in the view, checking it belongs there */
+    private int id(Graph<V,E>.Node node) {
+	int i = this.view.idOf(node);
+	if (i < 0) {
+	    throw new IllegalArgumentException("Node is not in the indexed graph");
+	}
+	return i;
+    }
+
+    /**
+     * Runs a query and expands its path into node ids, from start to
+     * target; real edges are also appended to edges if it isn't null.
+     * Returns null if the target can't be reached.
+     */
+    private int[] unpack(int source, int goal, ArrayList<Graph<V,E>.Edge> edges) {
+	Search s = borrow();
+	try {
+	    s.run(source, goal);
+	    if (s.meet < 0) {
+		return null;
+	    }
+	    // Arcs of the forward half (start to meeting node), then the backward half,
+	    // each as { arc, from node, to node } in travel order
+	    ArrayList<int[]> hops = new ArrayList<int[]>();
+	    for (int v = s.meet; v != source; v = s.parentF[v]) {
+		hops.add(new int[] { s.arcF[v], s.parentF[v], v });
+	    }
+	    Collections.reverse(hops);
+	    for (int v = s.meet; v != goal; v = s.parentB[v]) {
+		hops.add(new int[] { s.arcB[v], v, s.parentB[v] });
+	    }
+	    IntList ids = new IntList();
+	    ids.add(source);
+	    // Each arc expands, depth first, into the real edges it stands for
+	    ArrayDeque<int[]> stack = new ArrayDeque<int[]>();
+	    for (int[] hop : hops) {
+		stack.push(hop);
+		while (!stack.isEmpty()) {
+		    int[] top = stack.pop();
+		    int arc = top[0];
+		    int m = this.upMiddles[arc];
+		    if (m < 0) {
+			if (edges != null) {
+			    edges.add(this.view.getEdge(this.upEdges[arc]));
+			}
+			ids.add(top[2]);
+		    } else {
+			// x - m - y: push the second half first so the first comes out first
+			stack.push(new int[] { upArc(m, top[2]), m, top[2] });
+			stack.push(new int[] { upArc(m, top[1]), top[1], m });
+		    }
+		}
+	    }
+	    return ids.toArray();
+	} finally {
+	    this.idleSearches.add(s);
+	}
+    }
+
+    /** Returns the upward arc from a node to a higher ranked neighbor */
+    private int upArc(int from, int to) {
+	for (int a = this.upOffsets[from]; a < this.upOffsets[from+1]; a++) {
+	    if (this.upTargets[a] == to) {
+		return a;
+	    }
+	}
+	throw new IllegalStateException("Contraction hierarchy is missing an arc");
+    }
+
+    /**
+     * Returns a fingerprint of a view's nodes, edges and weights.  Two
+     * views with the same fingerprint give the same arc ids to the same
+     * edges, so an index built on one answers correctly for the other.
+     */
+    static long fingerprint(CompactGraph<?,?> view) {
+	long h = mix(view.numNodes()*0x9E3779B97F4A7C15L+view.numEdges());
+	for (int a = 0; a < view.numArcs(); a++) {
+	    h = mix(h^view.target(a));
+	    h = mix(h^view.edgeOf(a));
+	    h = mix(h^Double.doubleToLongBits(view.weight(a)));
+	}
+	for (int i = 0; i <= view.numNodes(); i++) {
+	    h = mix(h^((i < view.numNodes()) ? view.firstArc(i) : view.numArcs()));
+	}
+	return h;
+    }
+
+    /** Scrambles the bits of a long (the SplitMix64 finalizer) */
+    private static long mix(long z) {
+	z = (z^(z >>> 30))*0xBF58476D1CE4E5B9L;
+	z = (z^(z >>> 27))*0x94D049BB133111EBL;
+	return z^(z >>> 31);
+    }
+
+    /**
+     * Writes the index to a file (replacing it only once fully written),
+     * so it can be loaded instead of rebuilt.  All values little-endian:
+     * a header (magic "SMMC", version, node count, arc count, graph
+     * fingerprint, CRC-32C of the rest), then rank, upward offsets,
+     * targets, weights, edge ids and middle nodes.
+     */
+    public void save(Path path) throws IOException {
+	final int n = this.rank.length;
+	final int arcs = this.upTargets.length;
+	long size = 8L*n+4+20L*arcs;
+	if (size > Integer.MAX_VALUE-HEADER_SIZE) {
+	    throw new IOException("Contraction hierarchy too large to save");
+	}
+	ByteBuffer body = ByteBuffer.allocate((int)size).order(ByteOrder.LITTLE_ENDIAN);
+	body.asIntBuffer().put(this.rank);
+	body.position(body.position()+4*n);
+	body.asIntBuffer().put(this.upOffsets);
+	body.position(body.position()+4*(n+1));
+	body.asIntBuffer().put(this.upTargets);
+	body.position(body.position()+4*arcs);
+	body.asDoubleBuffer().put(this.upWeights);
+	body.position(body.position()+8*arcs);
+	body.asIntBuffer().put(this.upEdges);
+	body.position(body.position()+4*arcs);
+	body.asIntBuffer().put(this.upMiddles);
+	body.clear();
+	CRC32C crc = new CRC32C();
+	crc.update(body.duplicate());
+	final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(arcs).putLong(this.fingerprint).putLong(crc.getValue());
+	header.clear();
+	GraphWriter.atomically(path, tmp -> {
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+		    ByteBuffer[] parts = { header, body };
+		    while (body.hasRemaining()) {
+			channel.write(parts);
+		    }
+		    channel.force(true);
+		}
+	    });
+    }
+
+    /** Loads an index saved by save(), checking it belongs to the graph as it is now */
+    public static <V,E> ContractionHierarchy<V,E> load(Graph<V,E> graph, Path path) throws IOException {
+	return load(graph.freeze(), path);
+    }
+
+    /** Loads an index saved by save(), checking it belongs to a view */
+    public static <V,E> ContractionHierarchy<V,E> load(CompactGraph<V,E> view, Path path) throws IOException {
+	byte[] bytes = Files.readAllBytes(path);
+	ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+	if ((bytes.length < HEADER_SIZE)||(in.getInt(0) != MAGIC)) {
+	    throw new GraphFormatException("not a contraction hierarchy file");
+	}
+	if (in.getInt(4) != VERSION) {
+	    throw new GraphFormatException("unsupported contraction hierarchy version "+in.getInt(4));
+	}
+	int n = in.getInt(8);
+	int arcs = in.getInt(12);
+	long fingerprint = in.getLong(16);
+	long checksum = in.getLong(24);
+	if ((n < 0)||(arcs < 0)||(bytes.length-HEADER_SIZE != 8L*n+4+20L*arcs)) {
+	    throw new GraphFormatException("contraction hierarchy file is truncated or corrupt");
+	}
+	CRC32C crc = new CRC32C();
+	crc.update(bytes, HEADER_SIZE, bytes.length-HEADER_SIZE);
+	if (crc.getValue() != checksum) {
+	    throw new GraphFormatException("checksum mismatch: contraction hierarchy file is corrupt");
+	}
+	if ((n != view.numNodes())||(fingerprint != fingerprint(view))) {
+	    throw new GraphFormatException("contraction hierarchy was built for a different graph");
+	}
+	in.position(HEADER_SIZE);
+	int[] rank = new int[n];
+	int[] upOffsets = new int[n+1];
+	int[] upTargets = new int[arcs];
+	double[] upWeights = new double[arcs];
+	int[] upEdges = new int[arcs];
+	int[] upMiddles = new int[arcs];
+	in.asIntBuffer().get(rank);
+	in.position(in.position()+4*n);
+	in.asIntBuffer().get(upOffsets);
+	in.position(in.position()+4*(n+1));
+	in.asIntBuffer().get(upTargets);
+	in.position(in.position()+4*arcs);
+	in.asDoubleBuffer().get(upWeights);
+	in.position(in.position()+8*arcs);
+	in.asIntBuffer().get(upEdges);
+	in.position(in.position()+4*arcs);
+	in.asIntBuffer().get(upMiddles);
+	return new ContractionHierarchy<V,E>(view, fingerprint, rank, upOffsets, upTargets, upWeights, upEdges, upMiddles);
+    }
+
+    /**
+     * Query state for one thread: a bidirectional search over upward
+     * arcs.  Arrays are sized once and "cleared" by bumping a version
+     * number, so a query costs only what it touches.
+     */
+    private class Search {
+	/** Version each node's forward and backward entries belong to */
+	int[] seenF, seenB;
+
+	/** Costs from the start and from the target */
+	double[] costF, costB;
+
+	/** Previous node and arc on each side's tree */
+	int[] parentF, parentB, arcF, arcB;
+
+	/** Heaps for the two sides */
+	IndexedMinHeap heapF, heapB;
+
+	/** Current version */
+	int version;
+
+	/** Best cost found, and the node where it meets (-1 if none) */
+	double best;
+	int meet;
+
+	/** Constructs query state for n nodes */
+	Search(int n) {
+	    this.seenF = new int[n];
+	    this.seenB = new int[n];
+	    this.costF = new double[n];
+	    this.costB = new double[n];
+	    this.parentF = new int[n];
+	    this.parentB = new int[n];
+	    this.arcF = new int[n];
+	    this.arcB = new int[n];
+	    this.heapF = new IndexedMinHeap(n);
+	    this.heapB = new IndexedMinHeap(n);
+	}
+
+	/**
+	 * Finds the best cost and meeting node.  Each side stops once
+	 * its smallest key can't beat the best meeting found so far.
+	 */
+	void run(int source, int goal) {
+	    this.version++;
+	    if (this.version == 0) {
+		Arrays.fill(this.seenF, 0);
+		Arrays.fill(this.seenB, 0);
+		this.version = 1;
+	    }
+	    this.heapF.clear();
+	    this.heapB.clear();
+	    this.best = Double.MAX_VALUE;
+	    this.meet = -1;
+	    reach(true, source, 0.0, source, -1);
+	    reach(false, goal, 0.0, goal, -1);
+	    while (true) {
+		boolean f = (!this.heapF.isEmpty())&&(this.heapF.peekKey() < this.best);
+		boolean b = (!this.heapB.isEmpty())&&(this.heapB.peekKey() < this.best);
+		if ((!f)&&(!b)) {
+		    break;
+		}
+		boolean forward = f&&((!b)||(this.heapF.peekKey() <= this.heapB.peekKey()));
+		IndexedMinHeap heap = forward ? this.heapF : this.heapB;
+		double[] cost = forward ? this.costF : this.costB;
+		int u = heap.poll();
+		// Meeting point: reached from both sides
+		int[] otherSeen = forward ? this.seenB : this.seenF;
+		double[] otherCost = forward ? this.costB : this.costF;
+		if ((otherSeen[u] == this.version)&&(cost[u]+otherCost[u] < this.best)) {
+		    this.best = cost[u]+otherCost[u];
+		    this.meet = u;
+		}
+		for (int a = upOffsets[u]; a < upOffsets[u+1]; a++) {
+		    reach(forward, upTargets[a], cost[u]+upWeights[a], u, a);
+		}
+	    }
+	}
+
+	/** Offers a cost for a node on one side */
+	private void reach(boolean forward, int v, double c, int parent, int arc) {
+	    int[] seen = forward ? this.seenF : this.seenB;
+	    double[] cost = forward ? this.costF : this.costB;
+	    if ((seen[v] != this.version)||(c < cost[v])) {
+		seen[v] = this.version;
+		cost[v] = c;
+		(forward ? this.parentF : this.parentB)[v] = parent;
+		(forward ? this.arcF : this.arcB)[v] = arc;
+		(forward ? this.heapF : this.heapB).push(v, c);
+		// A node reached from both sides is a candidate meeting point
+		int[] otherSeen = forward ? this.seenB : this.seenF;
+		double[] otherCost = forward ? this.costB : this.costF;
+		if ((otherSeen[v] == this.version)&&(c+otherCost[v] < this.best)) {
+		    this.best = c+otherCost[v];
+		    this.meet = v;
+		}
+	    }
+	}
+    }
+
+    /**
+     * Preprocessing state: the remaining (not yet contracted) graph as
+     * growable per-node adjacency arrays, plus priorities.
+     */
+    private static class Contraction {
+	/** Number of nodes */
+	int n;
+
+	/** Neighbors, weights, real edge ids (-1 for shortcuts) and bypassed nodes (-1 for real edges) */
+	int[][] nbr, edge, mid;
+	double[][] weight;
+
+	/** Number of entries in each node's adjacency */
+	int[] degree;
+
+	/** Rank of each node, or -1 while it hasn't been contracted */
+	int[] rank;
+
+	/** Number of each node's neighbors contracted so far */
+	int[] contractedNeighbors;
+
+	/** Current priority of each node (lower contracts first) */
+	int[] priority;
+
+	/** Marks the nodes being contracted in the current batch */
+	boolean[] inBatch;
+
+	/** Witness search state, one per worker thread */
+	ThreadLocal<Witness> witnesses;
+
+	/** Upward arcs fixed for each node when it was contracted */
+	int[][] upNbr, upEdge, upMid;
+	double[][] upWeight;
+
+	/** Copies the view's adjacency */
+	Contraction(CompactGraph<?,?> view) {
+	    this.n = view.numNodes();
+	    this.nbr = new int[n][];
+	    this.edge = new int[n][];
+	    this.mid = new int[n][];
+	    this.weight = new double[n][];
+	    this.degree = new int[n];
+	    this.rank = new int[n];
+	    this.contractedNeighbors = new int[n];
+	    this.priority = new int[n];
+	    this.inBatch = new boolean[n];
+	    this.upNbr = new int[n][];
+	    this.upEdge = new int[n][];
+	    this.upMid = new int[n][];
+	    this.upWeight = new double[n][];
+	    Arrays.fill(this.rank, -1);
+	    for (int i = 0; i < n; i++) {
+		int d = view.degree(i);
+		this.nbr[i] = new int[Math.max(d, 2)];
+		this.edge[i] = new int[this.nbr[i].length];
+		this.mid[i] = new int[this.nbr[i].length];
+		this.weight[i] = new double[this.nbr[i].length];
+		for (int a = view.firstArc(i); a < view.endArc(i); a++) {
+		    int k = this.degree[i]++;
+		    this.nbr[i][k] = view.target(a);
+		    this.weight[i][k] = view.weight(a);
+		    this.edge[i][k] = view.edgeOf(a);
+		    this.mid[i][k] = -1;
+		}
+	    }
+	    final int size = n;
+	    this.witnesses = ThreadLocal.withInitial(() -> new Witness(size));
+	}
+
+	/** Contracts every node and packs the upward arcs into an index */
+	<V,E> ContractionHierarchy<V,E> run(CompactGraph<V,E> view) {
+	    IntStream.range(0, n).parallel().forEach(v -> this.priority[v] = estimate(v));
+	    int next = 0;
+	    // Nodes not yet contracted, compacted after each round
+	    int[] remaining = new int[n];
+	    int left = n;
+	    for (int v = 0; v < n; v++) {
+		remaining[v] = v;
+	    }
+	    int[] batch = new int[n];
+	    int[] changedNodes = new int[n];
+	    boolean[] dirty = new boolean[n];
+	    while (left > 0) {
+		// Local priority minima: no two of them are neighbors
+		int count = 0;
+		for (int k = 0; k < left; k++) {
+		    if (isLocalMinimum(remaining[k])) {
+			batch[count++] = remaining[k];
+		    }
+		}
+		final int[] chosen = Arrays.copyOf(batch, count);
+		for (int v : chosen) {
+		    this.inBatch[v] = true;
+		}
+		// Witness searches for the whole batch in parallel, on the graph
+		// as it stands.  They go around every batch node, since a path
+		// through one won't be there once it is contracted: with tied
+		// weights two batch nodes would otherwise witness each other.
+		final int[][][] shortcuts = new int[count][][];
+		final double[][] shortcutWeights = new double[count][];
+		IntStream.range(0, count).parallel().forEach(k -> {
+			ArrayList<int[]> pairs = new ArrayList<int[]>();
+			ArrayList<Double> costs = new ArrayList<Double>();
+			shortcutsFor(chosen[k], WITNESS_LIMIT, pairs, costs);
+			shortcuts[k] = pairs.toArray(new int[pairs.size()][]);
+			shortcutWeights[k] = new double[costs.size()];
+			for (int s = 0; s < costs.size(); s++) {
+			    shortcutWeights[k][s] = costs.get(s);
+			}
+		    });
+		// Then apply them one node at a time
+		for (int k = 0; k < count; k++) {
+		    int v = chosen[k];
+		    contract(v, next++);
+		    for (int s = 0; s < shortcuts[k].length; s++) {
+			int x = shortcuts[k][s][0];
+			int y = shortcuts[k][s][1];
+			link(x, y, shortcutWeights[k][s], -1, v);
+			link(y, x, shortcutWeights[k][s], -1, v);
+		    }
+		}
+		for (int v : chosen) {
+		    this.inBatch[v] = false;
+		}
+		// Neighbors of contracted nodes have new priorities
+		int changed = 0;
+		for (int v : chosen) {
+		    for (int u : this.upNbr[v]) {
+			this.contractedNeighbors[u]++;
+			if (!dirty[u]) {
+			    dirty[u] = true;
+			    changedNodes[changed++] = u;
+			}
+		    }
+		}
+		final int[] update = Arrays.copyOf(changedNodes, changed);
+		for (int u : update) {
+		    dirty[u] = false;
+		}
+		int kept = 0;
+		for (int k = 0; k < left; k++) {
+		    if (this.rank[remaining[k]] < 0) {
+			remaining[kept++] = remaining[k];
+		    }
+		}
+		left = kept;
+		IntStream.range(0, changed).parallel().forEach(k -> this.priority[update[k]] = estimate(update[k]));
+	    }
+	    return pack(view);
+	}
+
+	/** Returns true if a node comes before all its remaining neighbors */
+	boolean isLocalMinimum(int v) {
+	    for (int i = 0; i < this.degree[v]; i++) {
+		int u = this.nbr[v][i];
+		if ((this.priority[u] < this.priority[v])||((this.priority[u] == this.priority[v])&&(u < v))) {
+		    return false;
+		}
+	    }
+	    return true;
+	}
+
+	/**
+	 * Returns a node's priority: edge difference (counted double,
+	 * which gives fewer shortcuts) plus contracted neighbors
+	 */
+	int estimate(int v) {
+	    int shortcuts = shortcutsFor(v, ESTIMATE_LIMIT, null, null);
+	    return 2*(shortcuts-this.degree[v])+this.contractedNeighbors[v];
+	}
+
+	/**
+	 * Counts (and, if the lists aren't null, collects) the shortcuts
+	 * contracting a node would need: one for each pair of neighbors
+	 * whose path through it has no witness of equal or lower cost.
+	 */
+	int shortcutsFor(int v, int limit, ArrayList<int[]> pairs, ArrayList<Double> costs) {
+	    int d = this.degree[v];
+	    int count = 0;
+	    Witness w = this.witnesses.get();
+	    for (int i = 0; i < d-1; i++) {
+		int x = this.nbr[v][i];
+		double toX = this.weight[v][i];
+		double maxCost = 0;
+		for (int j = i+1; j < d; j++) {
+		    maxCost = Math.max(maxCost, toX+this.weight[v][j]);
+		}
+		w.search(this, x, v, i+1, maxCost, limit);
+		for (int j = i+1; j < d; j++) {
+		    double through = toX+this.weight[v][j];
+		    if (w.cost(this.nbr[v][j]) > through) {
+			count++;
+			if (pairs != null) {
+			    pairs.add(new int[] { x, this.nbr[v][j] });
+			    costs.add(through);
+			}
+		    }
+		}
+	    }
+	    return count;
+	}
+
+	/** Ranks a node, fixes its upward arcs and removes it from its neighbors */
+	void contract(int v, int r) {
+	    int d = this.degree[v];
+	    this.rank[v] = r;
+	    this.upNbr[v] = Arrays.copyOf(this.nbr[v], d);
+	    this.upWeight[v] = Arrays.copyOf(this.weight[v], d);
+	    this.upEdge[v] = Arrays.copyOf(this.edge[v], d);
+	    this.upMid[v] = Arrays.copyOf(this.mid[v], d);
+	    for (int i = 0; i < d; i++) {
+		unlink(this.nbr[v][i], v);
+	    }
+	    this.degree[v] = 0;
+	}
+
+	/** Adds an arc from x to y, or lowers the weight of the one there */
+	void link(int x, int y, double w, int e, int m) {
+	    for (int i = 0; i < this.degree[x]; i++) {
+		if (this.nbr[x][i] == y) {
+		    if (w < this.weight[x][i]) {
+			this.weight[x][i] = w;
+			this.edge[x][i] = e;
+			this.mid[x][i] = m;
+		    }
+		    return;
+		}
+	    }
+	    int i = this.degree[x]++;
+	    if (i == this.nbr[x].length) {
+		int size = 2*i;
+		this.nbr[x] = Arrays.copyOf(this.nbr[x], size);
+		this.edge[x] = Arrays.copyOf(this.edge[x], size);
+		this.mid[x] = Arrays.copyOf(this.mid[x], size);
+		this.weight[x] = Arrays.copyOf(this.weight[x], size);
+	    }
+	    this.nbr[x][i] = y;
+	    this.weight[x][i] = w;
+	    this.edge[x][i] = e;
+	    this.mid[x][i] = m;
+	}
+
+	/** Removes the arc from x to y (swapping the last one into its place) */
+	void unlink(int x, int y) {
+	    int last = --this.degree[x];
+	    for (int i = 0; i <= last; i++) {
+		if (this.nbr[x][i] == y) {
+		    this.nbr[x][i] = this.nbr[x][last];
+		    this.weight[x][i] = this.weight[x][last];
+		    this.edge[x][i] = this.edge[x][last];
+		    this.mid[x][i] = this.mid[x][last];
+		    return;
+		}
+	    }
+	    this.degree[x]++;
+	}
+
+	/** Packs the upward arcs into arrays indexed by node */
+	<V,E> ContractionHierarchy<V,E> pack(CompactGraph<V,E> view) {
+	    int[] offsets = new int[n+1];
+	    for (int v = 0; v < n; v++) {
+		offsets[v+1] = offsets[v]+this.upNbr[v].length;
+	    }
+	    int arcs = offsets[n];
+	    int[] targets = new int[arcs];
+	    double[] weights = new double[arcs];
+	    int[] edges = new int[arcs];
+	    int[] middles = new int[arcs];
+	    for (int v = 0; v < n; v++) {
+		System.arraycopy(this.upNbr[v], 0, targets, offsets[v], this.upNbr[v].length);
+		System.arraycopy(this.upWeight[v], 0, weights, offsets[v], this.upNbr[v].length);
+		System.arraycopy(this.upEdge[v], 0, edges, offsets[v], this.upNbr[v].length);
+		System.arraycopy(this.upMid[v], 0, middles, offsets[v], this.upNbr[v].length);
+	    }
+	    return new ContractionHierarchy<V,E>(view, fingerprint(view), this.rank, offsets, targets, weights, edges, middles);
+	}
+    }
+
+    /** Bounded Dijkstra search for witness paths, one per worker thread */
+    private static class Witness {
+	/** Costs, valid where stamp matches version */
+	double[] cost;
+	int[] stamp;
+	int version;
+
+	/** Marks the nodes being looked for in the current search */
+	int[] target;
+
+	/** Heap of reached nodes */
+	IndexedMinHeap heap;
+
+	/** Constructs search state for n nodes */
+	Witness(int n) {
+	    this.cost = new double[n];
+	    this.stamp = new int[n];
+	    this.target = new int[n];
+	    this.heap = new IndexedMinHeap(n);
+	}
+
+	/** Returns cost found for a node, or infinity if it wasn't reached */
+	double cost(int v) {
+	    return (this.stamp[v] == this.version) ? this.cost[v] : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Searches the remaining graph from a node, avoiding one node and
+	 * any in the batch being contracted, until the avoided node's neighbors from position first on are
+	 * all settled, costs pass maxCost or limit nodes are settled.
+	 * Costs found are all real path lengths, so any within bounds are
+	 * witnesses even if not final.
+	 */
+	void search(Contraction g, int from, int avoid, int first, double maxCost, int limit) {
+	    this.version++;
+	    if (this.version == 0) {
+		Arrays.fill(this.stamp, 0);
+		Arrays.fill(this.target, 0);
+		this.version = 1;
+	    }
+	    int targets = 0;
+	    for (int j = first; j < g.degree[avoid]; j++) {
+		this.target[g.nbr[avoid][j]] = this.version;
+		targets++;
+	    }
+	    this.heap.clear();
+	    this.stamp[from] = this.version;
+	    this.cost[from] = 0.0;
+	    this.heap.push(from, 0.0);
+	    int settled = 0;
+	    while ((!this.heap.isEmpty())&&(this.heap.peekKey() <= maxCost)&&(settled < limit)) {
+		int u = this.heap.poll();
+		settled++;
+		if ((this.target[u] == this.version)&&(--targets == 0)) {
+		    break;
+		}
+		for (int i = 0; i < g.degree[u]; i++) {
+		    int v = g.nbr[u][i];
+		    if ((v == avoid)||(g.inBatch[v])) {
+			continue;
+		    }
+		    double c = this.cost[u]+g.weight[u][i];
+		    if ((this.stamp[v] != this.version)||(c < this.cost[v])) {
+			this.stamp[v] = this.version;
+			this.cost[v] = c;
+			this.heap.push(v, c);
+		    }
+		}
+	    }
+	}
+    }
+}
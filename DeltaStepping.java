@@ -0,0 +1,340 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Parallel single-source shortest paths by delta-stepping.  Nodes wait
+ * in buckets of width delta by tentative cost.  The lowest bucket is
+ * emptied by relaxing the light arcs (weight at most delta) of all its
+ * nodes at once, in parallel, repeating while relaxations put nodes
+ * back into it; then the heavy arcs of every node it held are relaxed
+ * once.  Costs live in an atomic array of double bits, lowered with
+ * compare-and-set, so workers never lock.
+ *
+ * Costs match Graph.distance exactly: every node is eventually relaxed
+ * from with its final cost, and a larger cost never rounds to a smaller
+ * sum.  Signposts are chosen after the costs are known, so where two
+ * paths tie a different (equally short) one may be picked.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class DeltaStepping<V,E> {
+
+    /** Frontier nodes handled by one task before splitting stops */
+    private static final int LEAF_SIZE = 256;
+
+    /** View searched */
+    private CompactGraph<V,E> graph;
+
+    /** Bucket width */
+    private double delta;
+
+    /** Pool the relaxations run on */
+    private ForkJoinPool pool;
+
+    /** Tentative costs, as double bits */
+    private AtomicLongArray costs;
+
+    /** Constructs a search over a view with the given bucket width */
+    public DeltaStepping(CompactGraph<V,E> graph, double delta, ForkJoinPool pool) {
+	if (!(delta > 0)) {
+	    throw new IllegalArgumentException("Delta must be positive");
+	}
+	this.graph = graph;
+	this.delta = delta;
+	this.pool = pool;
+    }
+
+    /** Finds shortest paths from a node, with the default delta on the common pool */
+    public static <V,E> DijkstraResults<V,E> run(Graph<V,E> graph, Graph<V,E>.Node start) {
+	CompactGraph<V,E> c = graph.freeze();
+	int source = c.idOf(start);
+	if (source < 0) {
+	    throw new IllegalArgumentException("Node is not in the graph");
+	}
+	return new DeltaStepping<V,E>(c, defaultDelta(c), ForkJoinPool.commonPool()).run(source);
+    }
+
+    /**
+     * Returns the mean arc weight, a reasonable delta for maps: buckets
+     * hold about one hop's worth of cost, so each phase has plenty of
+     * parallel work without much re-relaxation
+     */
+    public static double defaultDelta(CompactGraph<?,?> graph) {
+	double sum = 0;
+	for (int a = 0; a < graph.numArcs(); a++) {
+	    sum += graph.weight(a);
+	}
+	double mean = sum/Math.max(1, graph.numArcs());
+	return (mean > 0) ? mean : 1.0;
+    }
+
+    /** Finds shortest paths from the node with the given id */
+    public DijkstraResults<V,E> run(int source) {
+	int n = this.graph.numNodes();
+	this.costs = new AtomicLongArray(n);
+	long infinite = Double.doubleToRawLongBits(Double.MAX_VALUE);
+	for (int i = 0; i < n; i++) {
+	    this.costs.set(i, infinite);
+	}
+	this.costs.set(source, Double.doubleToRawLongBits(0.0));
+
+	TreeMap<Long, IntList> buckets = new TreeMap<Long, IntList>();
+	IntList start = new IntList();
+	start.add(source);
+	buckets.put(0L, start);
+	// Stamps: last pass a node joined the frontier, and last bucket it was emptied from
+	int[] inFrontier = new int[n];
+	long[] emptiedFrom = new long[n];
+	Arrays.fill(emptiedFrom, -1);
+	int pass = 0;
+	IntList frontier = new IntList();
+	IntList removed = new IntList();
+	Relaxed relaxed = new Relaxed();
+
+	while (!buckets.isEmpty()) {
+	    Map.Entry<Long, IntList> lowest = buckets.pollFirstEntry();
+	    long b = lowest.getKey();
+	    IntList waiting = lowest.getValue();
+	    removed.clear();
+	    while (waiting != null) {
+		// Nodes still in this bucket, once each
+		pass++;
+		frontier.clear();
+		for (int k = 0; k < waiting.size; k++) {
+		    int v = waiting.values[k];
+		    if ((inFrontier[v] != pass)&&(bucketOf(cost(v)) == b)) {
+			inFrontier[v] = pass;
+			frontier.add(v);
+			if (emptiedFrom[v] != b) {
+			    emptiedFrom[v] = b;
+			    removed.add(v);
+			}
+		    }
+		}
+		relax(frontier, true, relaxed);
+		file(relaxed, buckets);
+		// Light arcs may have put nodes back in this bucket
+		waiting = buckets.remove(b);
+	    }
+	    relax(removed, false, relaxed);
+	    file(relaxed, buckets);
+	}
+
+	double[] cost = new double[n];
+	boolean[] settled = new boolean[n];
+	for (int i = 0; i < n; i++) {
+	    cost[i] = cost(i);
+	    settled[i] = cost[i] != Double.MAX_VALUE;
+	}
+	int[] signpost = signposts(cost, source);
+	return new DijkstraResults<V,E>(this.graph.nodeList(), cost, signpost, settled);
+    }
+
+    /** Returns a node's tentative cost */
+    private double cost(int v) {
+	return Double.longBitsToDouble(this.costs.get(v));
+    }
+
+    /** Returns the bucket a cost falls in */
+    private long bucketOf(double c) {
+	return (long)Math.floor(c/this.delta);
+    }
+
+    /** Lowers a node's cost to c if that is lower; returns true if it did */
+    private boolean lower(int v, double c) {
+	long current = this.costs.get(v);
+	while (c < Double.longBitsToDouble(current)) {
+	    if (this.costs.compareAndSet(v, current, Double.doubleToRawLongBits(c))) {
+		return true;
+	    }
+	    current = this.costs.get(v);
+	}
+	return false;
+    }
+
+    /**
+     * Relaxes the light or heavy arcs of a set of nodes in parallel.
+     * Each arc has its own slot in relaxed.nodes, set to the arc's
+     * target if the relaxation lowered its cost and -1 otherwise.
+     */
+    private void relax(IntList nodes, boolean light, Relaxed relaxed) {
+	int count = nodes.size;
+	if ((relaxed.offsets == null)||(relaxed.offsets.length < count+1)) {
+	    relaxed.offsets = new int[Math.max(count+1, 2*((relaxed.offsets == null) ? 0 : relaxed.offsets.length))];
+	}
+	relaxed.offsets[0] = 0;
+	for (int k = 0; k < count; k++) {
+	    relaxed.offsets[k+1] = relaxed.offsets[k]+this.graph.degree(nodes.values[k]);
+	}
+	relaxed.total = relaxed.offsets[count];
+	if (relaxed.nodes.length < relaxed.total) {
+	    relaxed.nodes = new int[Math.max(relaxed.total, 2*relaxed.nodes.length)];
+	}
+	if (count > 0) {
+	    this.pool.invoke(new Relax(nodes.values, relaxed, light, 0, count));
+	}
+    }
+
+    /** Puts each node whose cost was lowered into the bucket of its new cost */
+    private void file(Relaxed relaxed, TreeMap<Long, IntList> buckets) {
+	for (int s = 0; s < relaxed.total; s++) {
+	    int v = relaxed.nodes[s];
+	    if (v >= 0) {
+		long b = bucketOf(cost(v));
+		IntList list = buckets.get(b);
+		if (list == null) {
+		    list = new IntList();
+		    buckets.put(b, list);
+		}
+		list.add(v);
+	    }
+	}
+    }
+
+    /**
+     * Picks each reached node's signpost: a neighbor it is reached from
+     * at exactly its cost.  A node only reachable at its cost through
+     * zero-weight arcs from equally costly nodes takes its signpost from
+     * one that already has a path, so signposts never form a cycle.
+     */
+    private int[] signposts(double[] cost, int source) {
+	int n = cost.length;
+	int[] signpost = new int[n];
+	for (int i = 0; i < n; i++) {
+	    signpost[i] = -1;
+	}
+	signpost[source] = source;
+	this.pool.invoke(new Signposts(cost, signpost, 0, n));
+	// Zero-weight ties: spread outward from nodes that have a signpost
+	ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+	for (int i = 0; i < n; i++) {
+	    if (signpost[i] >= 0) {
+		queue.add(i);
+	    }
+	}
+	while (!queue.isEmpty()) {
+	    int u = queue.poll();
+	    for (int a = this.graph.firstArc(u); a < this.graph.endArc(u); a++) {
+		int v = this.graph.target(a);
+		if ((signpost[v] < 0)&&(cost[v] != Double.MAX_VALUE)&&(cost[u]+this.graph.weight(a) == cost[v])) {
+		    signpost[v] = u;
+		    queue.add(v);
+		}
+	    }
+	}
+	for (int i = 0; i < n; i++) {
+	    if (signpost[i] < 0) {
+		signpost[i] = i;
+	    }
+	}
+	return signpost;
+    }
+
+    /** Output of a relaxation pass: one slot per arc of the nodes relaxed */
+    private static class Relaxed {
+	/** Where each relaxed node's slots start */
+	int[] offsets;
+
+	/** Lowered target of each slot, or -1 */
+	int[] nodes = new int[16];
+
+	/** Number of slots used */
+	int total;
+    }
+
+    /** Relaxes arcs of a range of nodes, splitting it in half until it is small */
+    private class Relax extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	/** Nodes being relaxed */
+	private final int[] nodes;
+
+	/** Where the results go */
+	private final Relaxed relaxed;
+
+	/** Light arcs (true) or heavy arcs (false) */
+	private final boolean light;
+
+	/** Range of nodes, lo until hi */
+	private final int lo, hi;
+
+	/** Constructs a task for nodes lo until hi */
+	Relax(int[] nodes, Relaxed relaxed, boolean light, int lo, int hi) {
+	    this.nodes = nodes;
+	    this.relaxed = relaxed;
+	    this.light = light;
+	    this.lo = lo;
+	    this.hi = hi;
+	}
+
+	/** Relaxes the arcs, in parallel halves */
+	protected void compute() {
+	    if (this.hi-this.lo > LEAF_SIZE) {
+		int mid = (this.lo+this.hi) >>> 1;
+		invokeAll(new Relax(this.nodes, this.relaxed, this.light, this.lo, mid), new Relax(this.nodes, this.relaxed, this.light, mid, this.hi));
+		return;
+	    }
+	    for (int k = this.lo; k < this.hi; k++) {
+		int u = this.nodes[k];
+		double base = cost(u);
+		int slot = this.relaxed.offsets[k];
+		for (int a = graph.firstArc(u); a < graph.endArc(u); a++, slot++) {
+		    double w = graph.weight(a);
+		    int v = graph.target(a);
+		    if (((w <= delta) == this.light)&&(lower(v, base+w))) {
+			this.relaxed.nodes[slot] = v;
+		    } else {
+			this.relaxed.nodes[slot] = -1;
+		    }
+		}
+	    }
+	}
+    }
+
+    /** Picks signposts for a range of nodes, splitting it in half until it is small */
+    private class Signposts extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	/** Final costs */
+	private final double[] cost;
+
+	/** Signposts being filled in */
+	private final int[] signpost;
+
+	/** Range of nodes, lo until hi */
+	private final int lo, hi;
+
+	/** Constructs a task for nodes lo until hi */
+	Signposts(double[] cost, int[] signpost, int lo, int hi) {
+	    this.cost = cost;
+	    this.signpost = signpost;
+	    this.lo = lo;
+	    this.hi = hi;
+	}
+
+	/** Picks the signposts, in parallel halves */
+	protected void compute() {
+	    if (this.hi-this.lo > 16*LEAF_SIZE) {
+		int mid = (this.lo+this.hi) >>> 1;
+		invokeAll(new Signposts(this.cost, this.signpost, this.lo, mid), new Signposts(this.cost, this.signpost, mid, this.hi));
+		return;
+	    }
+	    for (int v = this.lo; v < this.hi; v++) {
+		if ((this.signpost[v] >= 0)||(this.cost[v] == Double.MAX_VALUE)) {
+		    continue;
+		}
+		// Strictly cheaper neighbors only; zero-weight ties are left for later
+		for (int a = graph.firstArc(v); a < graph.endArc(v); a++) {
+		    int u = graph.target(a);
+		    if ((this.cost[u] < this.cost[v])&&(this.cost[u]+graph.weight(a) == this.cost[v])) {
+			this.signpost[v] = u;
+			break;
+		    }
+		}
+	    }
+	}
+    }
+}
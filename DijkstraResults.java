@@ -9,26 +9,82 @@ import java.io.*;
  *
  */
 public class DijkstraResults<V,E> {
-    /** Hashtable of nodes to costs */
-    private Hashtable<Graph<V,E>.Node, Double> cost;
+    /** Nodes that were searched, by their index at the time of the search */
+    private ArrayList<Graph<V,E>.Node> nodes;
 
-    /** Hashtable of nodes to signposts */
-    private Hashtable<Graph<V,E>.Node, Graph<V,E>.Node> signpost;
+    /** Cost of each node, by index */
+    private double[] cost;
+
+    /** Index of each node's signpost (a node's own index if it has none) */
+    private int[] signpost;
+
+    /** Whether each node's cost is final */
+    private boolean[] settled;
+
+    /** Hashtable of nodes to costs, built on first request */
+    private Hashtable<Graph<V,E>.Node, Double> costTable;
+
+    /** Hashtable of nodes to signposts, built on first request */
+    private Hashtable<Graph<V,E>.Node, Graph<V,E>.Node> signpostTable;
 
     /** Constructor */
-    DijkstraResults(Hashtable<Graph<V,E>.Node, Double> cost, Hashtable<Graph<V,E>.Node, Graph<V,E>.Node> signpost) {
+    DijkstraResults(ArrayList<Graph<V,E>.Node> nodes, double[] cost, int[] signpost, boolean[] settled) {
+	this.nodes = nodes;
 	this.cost = cost;
 	this.signpost = signpost;
+	this.settled = settled;
+    }
+
+    /** Returns the index a node had during the search, or -1 if it wasn't searched */
+    private int indexOf(Graph<V,E>.Node node) {
+	int i = node.getIndex();
+	if ((i < 0)||(i >= this.nodes.size())||(this.nodes.get(i) != node)) {
+	    i = this.nodes.indexOf(node);
+	}
+	return i;
+    }
+
+    /** Returns the cost of reaching a node (Double.MAX_VALUE if unreached) */
+    public double getCost(Graph<V,E>.Node node) {
+	int i = indexOf(node);
+	return (i < 0) ? Double.MAX_VALUE : this.cost[i];
+    }
+
+    /** Returns the node before the given one on its shortest path */
+    public Graph<V,E>.Node getSignpost(Graph<V,E>.Node node) {
+	int i = indexOf(node);
+	return (i < 0) ? null : this.nodes.get(this.signpost[i]);
+    }
+
+    /**
+     * Returns true if the node's cost is final.  A search that stopped
+     * early at its target leaves the costs of farther nodes tentative.
+     */
+    public boolean isSettled(Graph<V,E>.Node node) {
+	int i = indexOf(node);
+	return (i >= 0)&&(this.settled[i]);
     }
 
     /** Accessor for cost hashtable */
     public Hashtable<Graph<V,E>.Node, Double> getCosts() {
-	return this.cost;
+	if (this.costTable == null) {
+	    this.costTable = new Hashtable<Graph<V,E>.Node, Double>(2*this.nodes.size()+1);
+	    for (int i = 0; i < this.nodes.size(); i++) {
+		this.costTable.put(this.nodes.get(i), this.cost[i]);
+	    }
+	}
+	return this.costTable;
     }
 
     /** Accessor for signpost hashtable */
     public Hashtable<Graph<V,E>.Node, Graph<V,E>.Node> getSignposts() {
-	return this.signpost;
+	if (this.signpostTable == null) {
+	    this.signpostTable = new Hashtable<Graph<V,E>.Node, Graph<V,E>.Node>(2*this.nodes.size()+1);
+	    for (int i = 0; i < this.nodes.size(); i++) {
+		this.signpostTable.put(this.nodes.get(i), this.nodes.get(this.signpost[i]));
+	    }
+	}
+	return this.signpostTable;
     }
 
     /** Wrapper for order method */
@@ -38,15 +94,22 @@ public class DijkstraResults<V,E> {
 	return nodes;
     }
 
-    /** Recursive method to put nodes in order */
+    /**
+     * Puts nodes in order by following signposts back to the start node.
+     * Iterative, so long paths can't overflow the stack.
+     */
     public ArrayList<Graph<V,E>.Node> orderRecurse (Graph<V,E>.Node node, ArrayList<Graph<V,E>.Node> orderedNodes) {
-	// Stop condition: when node cost == 0 (because that's the end node)
-	if (!signpost.get(node).equals(node)){
-	    orderedNodes.add(node);
-	    orderRecurse(signpost.get(node), orderedNodes);
-	} else {
+	int i = indexOf(node);
+	if (i < 0) {
 	    orderedNodes.add(node);
+	    return orderedNodes;
+	}
+	// Stop condition: when a node is its own signpost (because that's the end node)
+	while (this.signpost[i] != i) {
+	    orderedNodes.add(this.nodes.get(i));
+	    i = this.signpost[i];
 	}
+	orderedNodes.add(this.nodes.get(i));
 	return orderedNodes;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,177 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+/**
+ * Many-to-many shortest path distances.  Each source's row comes from
+ * one Dijkstra search that stops once every target is settled; rows
+ * are spread over a fork-join pool, and each worker thread reuses one
+ * PathSearch for all its rows.  Distances are Double.MAX_VALUE where a
+ * target can't be reached.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class DistanceMatrix {
+
+    /** Largest matrix returned as a single array */
+    private static final long MAX_CELLS = Integer.MAX_VALUE-8;
+
+    /** Most bytes of rows held in memory at once while writing a file */
+    private static final long BLOCK_BYTES = 64L << 20;
+
+    /**
+     * Returns the distances from each source to each target, row-major:
+     * entry i*targets.size()+j is from source i to target j
+     */
+    public static <V,E> double[] compute(Graph<V,E> graph, List<Graph<V,E>.Node> sources, List<Graph<V,E>.Node> targets) {
+	return compute(graph, sources, targets, ForkJoinPool.commonPool());
+    }
+
+    /** Returns the distance matrix, computing rows on the given pool */
+    public static <V,E> double[] compute(Graph<V,E> graph, List<Graph<V,E>.Node> sources, List<Graph<V,E>.Node> targets, ForkJoinPool pool) {
+	if ((long)sources.size()*targets.size() > MAX_CELLS) {
+	    throw new IllegalArgumentException("Distance matrix too large for one array; write it to a file instead");
+	}
+	Rows<V,E> rows = new Rows<V,E>(graph.freeze(), sources, targets);
+	double[] matrix = new double[sources.size()*targets.size()];
+	pool.invoke(new RowTask<V,E>(rows, matrix, 0, 0, sources.size()));
+	return matrix;
+    }
+
+    /**
+     * Writes the distance matrix to a file as little-endian doubles,
+     * row by row with no header, computing a block of rows at a time so
+     * only that block is ever in memory.  The file is replaced only once
+     * it is completely written.
+     */
+    public static <V,E> void write(Graph<V,E> graph, List<Graph<V,E>.Node> sources, List<Graph<V,E>.Node> targets, Path path) throws IOException {
+	write(graph, sources, targets, path, ForkJoinPool.commonPool());
+    }
+
+    /** Writes the distance matrix to a file, computing rows on the given pool */
+    public static <V,E> void write(Graph<V,E> graph, List<Graph<V,E>.Node> sources, List<Graph<V,E>.Node> targets, Path path, ForkJoinPool pool) throws IOException {
+	final Rows<V,E> rows = new Rows<V,E>(graph.freeze(), sources, targets);
+	final int n = sources.size();
+	final int m = targets.size();
+	// Enough rows per block to keep every worker busy, within the memory budget
+	final int block = (int)Math.max(1, Math.min(n, BLOCK_BYTES/(8L*Math.max(m, 1))));
+	final double[] values = new double[block*m];
+	final ByteBuffer buf = ByteBuffer.allocateDirect((int)Math.min(BLOCK_BYTES, 8L*block*m)+8).order(ByteOrder.LITTLE_ENDIAN);
+	GraphWriter.atomically(path, tmp -> {
+		try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+		    for (int first = 0; first < n; first += block) {
+			int count = Math.min(block, n-first);
+			pool.invoke(new RowTask<V,E>(rows, values, first, first, first+count));
+			for (int k = 0; k < count*m; k++) {
+			    if (!buf.hasRemaining()) {
+				drain(channel, buf);
+			    }
+			    buf.putDouble(values[k]);
+			}
+		    }
+		    drain(channel, buf);
+		    channel.force(true);
+		}
+	    });
+    }
+
+    /** Writes out and empties a buffer */
+    private static void drain(FileChannel channel, ByteBuffer buf) throws IOException {
+	buf.flip();
+	while (buf.hasRemaining()) {
+	    channel.write(buf);
+	}
+	buf.clear();
+    }
+
+    /** What every row needs: the view, source and target ids, and per-worker searches */
+    private static class Rows<V,E> {
+	/** Ids of the sources and targets */
+	final int[] sourceIds, targetIds;
+
+	/** Which ids are targets, and how many distinct ones there are */
+	final boolean[] isTarget;
+	final int distinctTargets;
+
+	/** One search per worker thread, reused for all its rows */
+	final ThreadLocal<PathSearch<V,E>> searches;
+
+	/** Looks up the ids of the sources and targets in a view */
+	Rows(CompactGraph<V,E> view, List<Graph<V,E>.Node> sources, List<Graph<V,E>.Node> targets) {
+	    this.sourceIds = ids(view, sources);
+	    this.targetIds = ids(view, targets);
+	    this.isTarget = new boolean[view.numNodes()];
+	    int distinct = 0;
+	    for (int t : this.targetIds) {
+		if (!this.isTarget[t]) {
+		    this.isTarget[t] = true;
+		    distinct++;
+		}
+	    }
+	    this.distinctTargets = distinct;
+	    this.searches = ThreadLocal.withInitial(() -> new PathSearch<V,E>(view));
+	}
+
+	/** Computes row i into out, starting at offset */
+	void row(int i, double[] out, int offset) {
+	    PathSearch<V,E> search = this.searches.get();
+	    search.run(this.sourceIds[i], this.isTarget, this.distinctTargets);
+	    for (int j = 0; j < this.targetIds.length; j++) {
+		out[offset+j] = search.cost(this.targetIds[j]);
+	    }
+	}
+
+	/** Returns the ids of nodes in a view */
+	private static <V,E> int[] ids(CompactGraph<V,E> view, List<Graph<V,E>.Node> nodes) {
+	    int[] ids = new int[nodes.size()];
+	    for (int k = 0; k < ids.length; k++) {
+		ids[k] = view.idOf(nodes.get(k));
+		if (ids[k] < 0) {
+		    throw new IllegalArgumentException("Node is not in the graph");
+		}
+	    }
+	    return ids;
+	}
+    }
+
+    /** Computes a range of rows, splitting it in half until it is one row */
+    private static class RowTask<V,E> extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
+
+	/** Shared row inputs */
+	private final Rows<V,E> rows;
+
+	/** Output array, and the row stored at its start */
+	private final double[] out;
+	private final int base;
+
+	/** Rows to compute, lo until hi */
+	private final int lo, hi;
+
+	/** Constructs a task for rows lo until hi */
+	RowTask(Rows<V,E> rows, double[] out, int base, int lo, int hi) {
+	    this.rows = rows;
+	    this.out = out;
+	    this.base = base;
+	    this.lo = lo;
+	    this.hi = hi;
+	}
+
+	/** Computes the rows, in parallel halves */
+	protected void compute() {
+	    if (this.hi-this.lo <= 1) {
+		for (int i = this.lo; i < this.hi; i++) {
+		    this.rows.row(i, this.out, (i-this.base)*this.rows.targetIds.length);
+		}
+	    } else {
+		int mid = (this.lo+this.hi) >>> 1;
+		invokeAll(new RowTask<V,E>(this.rows, this.out, this.base, this.lo, mid), new RowTask<V,E>(this.rows, this.out, this.base, mid, this.hi));
+	    }
+	}
+    }
+}
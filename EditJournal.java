@@ -0,0 +1,584 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.zip.CRC32C;
+import java.awt.Point;
+
+/**
+ * Incremental autosave for a displayed graph.  Every change to the
+ * graph is appended to a journal file as a small record; a background
+ * thread writes records in batches and forces each batch to disk once
+ * (group commit), so the cost of autosaving follows the edit rate
+ * rather than the size of the map.  Now and then the whole map is
+ * written as a checkpoint (in the binary format, off the event thread)
+ * and a new journal is started, so replay after a crash stays short.
+ *
+ * Files live next to a base path: base.ckpt-G is the map as it was when
+ * base.journal-G was started.  A journal's header says whether it simply
+ * continues the one before it; one that follows a bulk load does not,
+ * and can only be replayed on top of its own checkpoint.
+ *
+ * Journal records are [length][CRC-32C][payload], little-endian, and
+ * refer to nodes by their master list index at the time of the change.
+ * Changes must come from one thread (the event thread, in the GUI).
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class EditJournal implements GraphListener<DisplayNodeData<String>, Double> {
+
+    /** "SMMJ" read as a little-endian int */
+    static final int MAGIC = 0x4A4D4D53;
+
+    /** Current journal format version */
+    static final int VERSION = 1;
+
+    /** Size of a journal header */
+    static final int HEADER_SIZE = 16;
+
+    /** Header flag for a journal that continues the previous one */
+    private static final int CONTINUOUS = 1;
+
+    /** Journal size below which a checkpoint is never worth writing */
+    private static final long MIN_CHECKPOINT_BYTES = 1 << 20;
+
+    /** Largest record accepted when replaying */
+    private static final int MAX_RECORD = 1 << 24;
+
+    /** Record types */
+    private static final byte NODE_ADD = 1, NODE_REMOVE = 2, NODE_CHANGE = 3, EDGE_ADD = 4, EDGE_REMOVE = 5, EDGE_CHANGE = 6, CLEAR = 7;
+
+    /** Graph being journaled */
+    private Graph<DisplayNodeData<String>, Double> graph;
+
+    /** Base path of the journal and checkpoint files */
+    private Path base;
+
+    /** Current generation */
+    private int generation;
+
+    /** Records and commands waiting for the writer thread */
+    private LinkedBlockingQueue<Object> queue;
+
+    /** Thread writing the journal */
+    private Thread writer;
+
+    /** Runs checkpoint writes, one at a time */
+    private ExecutorService checkpointer;
+
+    /** Number of checkpoints queued or being written */
+    private AtomicInteger checkpointsPending;
+
+    /** Bytes in the current journal file (written by the writer thread) */
+    private volatile long journalBytes;
+
+    /** Size of the last checkpoint written */
+    private volatile long checkpointBytes;
+
+    /** First failure writing the journal or a checkpoint, if any */
+    private volatile IOException failure;
+
+    /** Number of changes recorded */
+    private long editCount;
+
+    /** True while changes are not being recorded */
+    private boolean paused;
+
+    /** Starts a new journal file (writer thread command) */
+    private static class Rotate {
+	final int generation;
+	final boolean continuous;
+
+	Rotate(int generation, boolean continuous) {
+	    this.generation = generation;
+	    this.continuous = continuous;
+	}
+    }
+
+    /** Deletes files older than a generation (writer thread command) */
+    private static class Purge {
+	final int generation;
+
+	Purge(int generation) {
+	    this.generation = generation;
+	}
+    }
+
+    /** Tells the writer thread to finish */
+    private static final Object CLOSE = new Object();
+
+    /**
+     * Starts journaling a graph.  Files from earlier sessions under the
+     * same base are kept until the first checkpoint of this one is on
+     * disk, so they should be recovered (or discarded) first.
+     */
+    public EditJournal(Graph<DisplayNodeData<String>, Double> graph, Path base) throws IOException {
+	this.graph = graph;
+	this.base = base.toAbsolutePath();
+	Files.createDirectories(this.base.getParent());
+	this.generation = 0;
+	for (int g : generations(this.base, ".journal-")) {
+	    this.generation = Math.max(this.generation, g);
+	}
+	for (int g : generations(this.base, ".ckpt-")) {
+	    this.generation = Math.max(this.generation, g);
+	}
+	this.queue = new LinkedBlockingQueue<Object>();
+	this.checkpointsPending = new AtomicInteger();
+	this.checkpointer = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "journal-checkpoint");
+		t.setDaemon(true);
+		return t;
+	    });
+	this.writer = new Thread(this::writeLoop, "journal-writer");
+	this.writer.setDaemon(true);
+	this.writer.start();
+	// A fresh journal continues whatever older files describe
+	checkpoint(true);
+	graph.addListener(this);
+    }
+
+    /** Returns number of changes recorded so far */
+    public long getEditCount() {
+	return this.editCount;
+    }
+
+    /** Returns the first write failure, or null if there hasn't been one */
+    public IOException getFailure() {
+	return this.failure;
+    }
+
+    /** Stops recording changes, e.g. during a bulk load */
+    public void pause() {
+	this.paused = true;
+    }
+
+    /**
+     * Resumes recording after pause().  The graph is checkpointed, and
+     * the new journal can only be replayed on top of that checkpoint.
+     */
+    public void restart() {
+	this.paused = false;
+	this.editCount++;
+	checkpoint(false);
+    }
+
+    /** Writes a checkpoint in the background and starts a new journal */
+    public void checkpoint() {
+	checkpoint(true);
+    }
+
+    /**
+     * Writes a checkpoint if the journal has grown to half the size of
+     * the last one (and at least MIN_CHECKPOINT_BYTES), so checkpoint
+     * cost stays in proportion to the number of edits
+     */
+    public boolean checkpointIfDue() {
+	long due = Math.max(MIN_CHECKPOINT_BYTES, this.checkpointBytes/2);
+	if ((this.checkpointsPending.get() == 0)&&(this.journalBytes >= due)) {
+	    checkpoint(true);
+	    return true;
+	}
+	return false;
+    }
+
+    /**
+     * Stops journaling, waiting until everything recorded is on disk.
+     * Checkpoints still being written are abandoned.
+     */
+    public void close() {
+	this.graph.removeListener(this);
+	this.checkpointer.shutdownNow();
+	this.queue.add(CLOSE);
+	try {
+	    this.writer.join();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+    }
+
+    /** Starts a new generation and writes its checkpoint */
+    private void checkpoint(boolean continuous) {
+	final int gen = ++this.generation;
+	this.queue.add(new Rotate(gen, continuous));
+	// Copy on this thread so the copy matches the journal exactly
+	final MapData map = MapData.from(this.graph);
+	final Path path = file(this.base, ".ckpt-", gen);
+	this.checkpointsPending.incrementAndGet();
+	this.checkpointer.execute(() -> {
+		try {
+		    GraphWriter.atomically(path, tmp -> BinaryGraphFile.write(map, tmp));
+		    this.checkpointBytes = Files.size(path);
+		    // Older files aren't needed once this is safely on disk
+		    this.queue.add(new Purge(gen));
+		} catch (IOException e) {
+		    if (this.failure == null) {
+			this.failure = e;
+		    }
+		} finally {
+		    this.checkpointsPending.decrementAndGet();
+		}
+	    });
+    }
+
+    /** Records a node being added */
+    public void nodeAdded(Graph<DisplayNodeData<String>, Double>.Node node) {
+	DisplayNodeData<String> data = node.getData();
+	record(new Record(NODE_ADD).putString(data.getData()).putInt(data.getPoint().x).putInt(data.getPoint().y));
+    }
+
+    /** Records a node being removed */
+    public void nodeRemoved(Graph<DisplayNodeData<String>, Double>.Node node) {
+	record(new Record(NODE_REMOVE).putInt(node.getIndex()));
+    }
+
+    /** Records a node's label or location changing */
+    public void nodeChanged(Graph<DisplayNodeData<String>, Double>.Node node) {
+	DisplayNodeData<String> data = node.getData();
+	record(new Record(NODE_CHANGE).putInt(node.getIndex()).putString(data.getData()).putInt(data.getPoint().x).putInt(data.getPoint().y));
+    }
+
+    /** Records an edge being added */
+    public void edgeAdded(Graph<DisplayNodeData<String>, Double>.Edge edge) {
+	record(new Record(EDGE_ADD).putInt(edge.getHead().getIndex()).putInt(edge.getTail().getIndex()).putDouble(edge.getData()));
+    }
+
+    /** Records an edge being removed */
+    public void edgeRemoved(Graph<DisplayNodeData<String>, Double>.Edge edge) {
+	record(new Record(EDGE_REMOVE).putInt(edge.getHead().getIndex()).putInt(edge.getTail().getIndex()));
+    }
+
+    /** Records an edge's weight changing */
+    public void edgeChanged(Graph<DisplayNodeData<String>, Double>.Edge edge) {
+	record(new Record(EDGE_CHANGE).putInt(edge.getHead().getIndex()).putInt(edge.getTail().getIndex()).putDouble(edge.getData()));
+    }
+
+    /** Records the graph being cleared */
+    public void cleared() {
+	record(new Record(CLEAR));
+    }
+
+    /** Hands a finished record to the writer thread */
+    private void record(Record r) {
+	if (!this.paused) {
+	    this.editCount++;
+	    this.queue.add(r.finish());
+	}
+    }
+
+    /** Body of the writer thread: drains the queue a batch at a time */
+    private void writeLoop() {
+	FileChannel channel = null;
+	ArrayList<Object> batch = new ArrayList<Object>();
+	ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+	boolean closing = false;
+	while (!closing) {
+	    batch.clear();
+	    try {
+		batch.add(this.queue.take());
+	    } catch (InterruptedException e) {
+		break;
+	    }
+	    this.queue.drainTo(batch);
+	    try {
+		for (Object item : batch) {
+		    if (item == CLOSE) {
+			closing = true;
+		    } else if (item instanceof Rotate) {
+			buf = flush(channel, buf);
+			if (channel != null) {
+			    channel.close();
+			}
+			Rotate rotate = (Rotate)item;
+			channel = FileChannel.open(file(this.base, ".journal-", rotate.generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			header.putInt(MAGIC).putInt(VERSION).putInt(rotate.generation).putInt(rotate.continuous ? CONTINUOUS : 0);
+			header.flip();
+			while (header.hasRemaining()) {
+			    channel.write(header);
+			}
+			this.journalBytes = 0;
+		    } else if (item instanceof Purge) {
+			purge(((Purge)item).generation);
+		    } else if (channel != null) {
+			byte[] r = (byte[])item;
+			if (buf.remaining() < r.length) {
+			    buf = flush(channel, buf);
+			    if (buf.capacity() < r.length) {
+				buf = ByteBuffer.allocateDirect(r.length);
+			    }
+			}
+			buf.put(r);
+			this.journalBytes += r.length;
+		    }
+		}
+		// One forced write per batch
+		buf = flush(channel, buf);
+		if (channel != null) {
+		    channel.force(false);
+		}
+	    } catch (IOException e) {
+		if (this.failure == null) {
+		    this.failure = e;
+		}
+		buf.clear();
+	    }
+	}
+	try {
+	    if (channel != null) {
+		channel.close();
+	    }
+	} catch (IOException e) {}
+    }
+
+    /** Writes out and empties a buffer, returning it */
+    private static ByteBuffer flush(FileChannel channel, ByteBuffer buf) throws IOException {
+	buf.flip();
+	while ((channel != null)&&(buf.hasRemaining())) {
+	    channel.write(buf);
+	}
+	buf.clear();
+	return buf;
+    }
+
+    /** Deletes checkpoints and journals older than a generation */
+    private void purge(int generation) throws IOException {
+	for (int g : generations(this.base, ".ckpt-")) {
+	    if (g < generation) {
+		Files.deleteIfExists(file(this.base, ".ckpt-", g));
+	    }
+	}
+	for (int g : generations(this.base, ".journal-")) {
+	    if (g < generation) {
+		Files.deleteIfExists(file(this.base, ".journal-", g));
+	    }
+	}
+    }
+
+    /** Returns true if there are journal or checkpoint files under a base path */
+    public static boolean hasRecoveryData(Path base) throws IOException {
+	return (!generations(base, ".journal-").isEmpty())||(!generations(base, ".ckpt-").isEmpty());
+    }
+
+    /**
+     * Rebuilds the journaled map in an empty graph: loads the newest
+     * readable checkpoint, then replays its journal and any that
+     * continue it.  Replay stops at the first damaged record (normally
+     * the one being written when the program died).  Returns false if
+     * there was nothing usable to recover.
+     */
+    public static boolean recover(Path base, Graph<DisplayNodeData<String>, Double> graph) throws IOException {
+	TreeSet<Integer> checkpoints = generations(base, ".ckpt-");
+	TreeSet<Integer> journals = generations(base, ".journal-");
+	int start = -1;
+	for (int g : checkpoints.descendingSet()) {
+	    try {
+		MapData map = BinaryGraphFile.read(file(base, ".ckpt-", g));
+		map.addTo(graph);
+		start = g;
+		break;
+	    } catch (IOException e) {
+		// Torn or damaged; try an older one
+	    }
+	}
+	if (start < 0) {
+	    // Without a checkpoint, the very first journal starts from nothing
+	    if ((journals.isEmpty())||(journals.first() != 1)) {
+		return false;
+	    }
+	    start = 1;
+	}
+	for (int g = start; journals.contains(g); g++) {
+	    if (!replay(file(base, ".journal-", g), g, (g == start), graph)) {
+		break;
+	    }
+	}
+	return true;
+    }
+
+    /** Deletes all journal and checkpoint files under a base path */
+    public static void discard(Path base) throws IOException {
+	for (int g : generations(base, ".ckpt-")) {
+	    Files.deleteIfExists(file(base, ".ckpt-", g));
+	}
+	for (int g : generations(base, ".journal-")) {
+	    Files.deleteIfExists(file(base, ".journal-", g));
+	}
+    }
+
+    /**
+     * Replays one journal file.  Returns true if the whole file was
+     * applied, so the next one may follow it.
+     */
+    private static boolean replay(Path path, int generation, boolean first, Graph<DisplayNodeData<String>, Double> graph) throws IOException {
+	byte[] bytes = Files.readAllBytes(path);
+	ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+	if ((in.remaining() < HEADER_SIZE)||(in.getInt() != MAGIC)||(in.getInt() != VERSION)||(in.getInt() != generation)) {
+	    return false;
+	}
+	if ((!first)&&((in.getInt() & CONTINUOUS) == 0)) {
+	    return false;
+	}
+	in.position(HEADER_SIZE);
+	CRC32C crc = new CRC32C();
+	while (in.remaining() >= 8) {
+	    int length = in.getInt();
+	    int sum = in.getInt();
+	    if ((length <= 0)||(length > MAX_RECORD)||(length > in.remaining())) {
+		return false;
+	    }
+	    crc.reset();
+	    crc.update(bytes, in.position(), length);
+	    if ((int)crc.getValue() != sum) {
+		return false;
+	    }
+	    ByteBuffer payload = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+	    payload.limit(length);
+	    in.position(in.position()+length);
+	    try {
+		apply(payload, graph);
+	    } catch (RuntimeException e) {
+		// A record that doesn't fit the graph: treat as damage
+		return false;
+	    }
+	}
+	return !in.hasRemaining();
+    }
+
+    /** Applies one record to a graph */
+    private static void apply(ByteBuffer r, Graph<DisplayNodeData<String>, Double> graph) {
+	switch (r.get()) {
+	case NODE_ADD: {
+	    String label = getString(r);
+	    graph.addNode(new DisplayNodeData<String>(label, new Point(r.getInt(), r.getInt())));
+	    break;
+	}
+	case NODE_REMOVE:
+	    graph.removeNode(graph.getNode(r.getInt()));
+	    break;
+	case NODE_CHANGE: {
+	    Graph<DisplayNodeData<String>, Double>.Node node = graph.getNode(r.getInt());
+	    node.getData().setData(getString(r));
+	    node.getData().setPoint(new Point(r.getInt(), r.getInt()));
+	    graph.relocate(node);
+	    break;
+	}
+	case EDGE_ADD: {
+	    Graph<DisplayNodeData<String>, Double>.Node head = graph.getNode(r.getInt());
+	    Graph<DisplayNodeData<String>, Double>.Node tail = graph.getNode(r.getInt());
+	    graph.addEdge(r.getDouble(), head, tail);
+	    break;
+	}
+	case EDGE_REMOVE: {
+	    Graph<DisplayNodeData<String>, Double>.Node head = graph.getNode(r.getInt());
+	    graph.removeEdge(head, graph.getNode(r.getInt()));
+	    break;
+	}
+	case EDGE_CHANGE: {
+	    Graph<DisplayNodeData<String>, Double>.Node head = graph.getNode(r.getInt());
+	    graph.getEdgeRef(head, graph.getNode(r.getInt())).setData(r.getDouble());
+	    break;
+	}
+	case CLEAR:
+	    graph.clear();
+	    break;
+	default:
+	    throw new IllegalStateException("Unknown journal record");
+	}
+    }
+
+    /** Reads a length-prefixed UTF-8 string */
+    private static String getString(ByteBuffer r) {
+	byte[] b = new byte[r.getInt()];
+	r.get(b);
+	return new String(b, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the path of a generation's file of some kind */
+    private static Path file(Path base, String kind, int generation) {
+	return base.resolveSibling(base.getFileName()+kind+generation);
+    }
+
+    /** Returns the generations that have a file of some kind */
+    private static TreeSet<Integer> generations(Path base, String kind) throws IOException {
+	TreeSet<Integer> found = new TreeSet<Integer>();
+	Path dir = base.toAbsolutePath().getParent();
+	String prefix = base.getFileName()+kind;
+	if (!Files.isDirectory(dir)) {
+	    return found;
+	}
+	try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, base.getFileName()+"*")) {
+	    for (Path p : files) {
+		String name = p.getFileName().toString();
+		if (name.startsWith(prefix)) {
+		    try {
+			found.add(Integer.parseInt(name.substring(prefix.length())));
+		    } catch (NumberFormatException e) {}
+		}
+	    }
+	}
+	return found;
+    }
+
+    /** A journal record being built: type byte, then fields */
+    private static class Record {
+	/** Payload so far, after 8 bytes left for length and checksum */
+	private ByteBuffer buf;
+
+	/** Starts a record of a type */
+	Record(byte type) {
+	    this.buf = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+	    this.buf.position(8);
+	    this.buf.put(type);
+	}
+
+	/** Appends an int */
+	Record putInt(int v) {
+	    room(4);
+	    this.buf.putInt(v);
+	    return this;
+	}
+
+	/** Appends a double */
+	Record putDouble(double v) {
+	    room(8);
+	    this.buf.putDouble(v);
+	    return this;
+	}
+
+	/** Appends a length-prefixed UTF-8 string */
+	Record putString(String s) {
+	    byte[] b = s.getBytes(StandardCharsets.UTF_8);
+	    putInt(b.length);
+	    room(b.length);
+	    this.buf.put(b);
+	    return this;
+	}
+
+	/** Fills in length and checksum and returns the framed bytes */
+	byte[] finish() {
+	    int length = this.buf.position()-8;
+	    CRC32C crc = new CRC32C();
+	    crc.update(this.buf.array(), 8, length);
+	    this.buf.putInt(0, length);
+	    this.buf.putInt(4, (int)crc.getValue());
+	    return Arrays.copyOf(this.buf.array(), length+8);
+	}
+
+	/** Makes sure there is room for n more bytes */
+	private void room(int n) {
+	    if (this.buf.remaining() < n) {
+		ByteBuffer bigger = ByteBuffer.allocate(Math.max(2*this.buf.capacity(), this.buf.position()+n)).order(ByteOrder.LITTLE_ENDIAN);
+		this.buf.flip();
+		bigger.put(this.buf);
+		this.buf = bigger;
+	    }
+	}
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.function.*;
+import java.awt.Point;
+
+/**
+ * A* heuristic for maps: straight-line distance between two nodes'
+ * locations, times the smallest weight per unit of length of any edge
+ * in the graph.  No path can cost less than that, so the estimate is
+ * admissible and consistent whatever units the weights are in.  The
+ * ratio is recalibrated whenever the graph has changed.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class EuclideanHeuristic<V,E> implements Heuristic<V> {
+
+    /** Allowance for rounding, so estimates stay on the low side */
+    private static final double SAFETY = 1.0-1e-9;
+
+    /** Graph whose edges set the ratio */
+    private Graph<V,E> graph;
+
+    /** Gives the location of a node's data */
+    private Function<? super V, Point> locator;
+
+    /** Smallest weight per unit of length */
+    private double ratio;
+
+    /** Graph modification count the ratio was computed at */
+    private long calibratedAt;
+
+    /** Constructs a heuristic for a graph whose nodes have locations */
+    public EuclideanHeuristic(Graph<V,E> graph, Function<? super V, Point> locator) {
+	this.graph = graph;
+	this.locator = locator;
+	this.calibratedAt = -1;
+    }
+
+    /** Returns the smallest weight per unit of length, recalibrating if the graph changed */
+    public double getRatio() {
+	if (this.calibratedAt != this.graph.getModCount()) {
+	    this.ratio = calibrate();
+	    this.calibratedAt = this.graph.getModCount();
+	}
+	return this.ratio;
+    }
+
+    /** Returns the scaled straight-line distance between two locations */
+    public double estimate(V from, V to) {
+	Point a = this.locator.apply(from);
+	Point b = this.locator.apply(to);
+	return getRatio()*Math.hypot((double)a.x-b.x, (double)a.y-b.y);
+    }
+
+    /**
+     * Finds the smallest weight per unit of length over all edges.
+     * Edges of zero length say nothing about the ratio and are skipped;
+     * any negative or zero weight makes the ratio 0 (plain Dijkstra).
+     */
+    private double calibrate() {
+	CompactGraph<V,E> c = this.graph.freeze();
+	Point[] locations = new Point[c.numNodes()];
+	for (int i = 0; i < locations.length; i++) {
+	    locations[i] = this.locator.apply(c.getNode(i).getData());
+	}
+	double best = Double.POSITIVE_INFINITY;
+	for (int i = 0; i < c.numNodes(); i++) {
+	    for (int a = c.firstArc(i); a < c.endArc(i); a++) {
+		int j = c.target(a);
+		// Each edge appears from both ends; look at it once
+		if (j < i) {
+		    continue;
+		}
+		double w = c.weight(a);
+		if (!(w > 0)) {
+		    return 0.0;
+		}
+		double length = Math.hypot((double)locations[i].x-locations[j].x, (double)locations[i].y-locations[j].y);
+		if (length > 0) {
+		    best = Math.min(best, w/length);
+		}
+	    }
+	}
+	return (best == Double.POSITIVE_INFINITY) ? 0.0 : best*SAFETY;
+    }
+}
@@ -1,5 +1,11 @@
 import java.util.*;
+import java.util.function.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.*;
 import java.io.*;
+import java.awt.Point;
+import java.awt.Rectangle;
 
 /**
  * Implementation of a Graph data structure
@@ -16,110 +22,726 @@ public class Graph<V, E> extends Object {
     /** List of nodes */
     private ArrayList<Node> nodes;
 
+    /** Count of changes made to the graph, used to spot stale views */
+    private int modCount;
+
+    /** Compact view of the graph from the last freeze() */
+    private CompactGraph<V, E> frozen;
+
+    /** Value of modCount when the compact view was built */
+    private int frozenModCount;
+
+    /** Reads the location out of node data, if locations are indexed */
+    private Function<? super V, Point> locator;
+
+    /** Spatial index over node locations, or null if not enabled */
+    private SpatialIndex<Node> spatial;
+
+    /** Listeners told about every change */
+    private ArrayList<GraphListener<V, E>> listeners;
+
+    /** Turns edge data into the weight stored on each edge */
+    private ToDoubleFunction<? super E> weigher;
+
+    /** Lock guarding the graph in concurrent mode, or null if unsynchronized */
+    private StampedLock lock;
+
+    /** Thread holding the write lock, so nested calls from it don't deadlock */
+    private Thread writer;
+
+    /** Guards the cached compact view when several readers freeze at once */
+    private Object freezeLock;
+
+    /** Nodes again, as a vector whose versions can be shared with snapshots */
+    private PersistentVector.Transient<Node> nodeVector;
+
+    /** Edges with their endpoints and weights, shared with snapshots the same way */
+    private PersistentVector.Transient<GraphSnapshot.EdgeState<V, E>> edgeVector;
+
     /** Constructs a new graph with empty nodes and edges */
     Graph () {
 	this.edges = new ArrayList<Edge>();
 	this.nodes = new ArrayList<Node>();
+	this.modCount = 0;
+	this.frozen = null;
+	this.listeners = new ArrayList<GraphListener<V, E>>();
+	this.weigher = Graph::defaultWeight;
+	this.lock = null;
+	this.freezeLock = new Object();
+	this.nodeVector = PersistentVector.<Node>empty().asTransient();
+	this.edgeVector = PersistentVector.<GraphSnapshot.EdgeState<V, E>>empty().asTransient();
+    }
+
+    /**
+     * Returns an empty graph that is safe to share between threads.
+     * Changes take a write lock, while index lookups use optimistic
+     * reads and only fall back to the read lock when a change got in
+     * the way.  Algorithms run on freeze(), which copies a consistent
+     * view under the read lock, so long searches don't hold up edits.
+     * Node and edge data objects changed in place aren't covered.
+     */
+    public static <V, E> Graph<V, E> concurrent() {
+	Graph<V, E> graph = new Graph<V, E>();
+	graph.lock = new StampedLock();
+	return graph;
+    }
+
+    /** Returns true if the graph locks for use from several threads */
+    public boolean isConcurrent() {
+	return this.lock != null;
+    }
+
+    /** Takes the write lock, unless unsynchronized or this thread already has it; returns 0 if not taken */
+    private long writeLock() {
+	if ((this.lock == null)||(this.writer == Thread.currentThread())) {
+	    return 0;
+	}
+	long stamp = this.lock.writeLock();
+	this.writer = Thread.currentThread();
+	return stamp;
+    }
+
+    /** Releases a write lock taken by writeLock() */
+    private void unlockWrite(long stamp) {
+	if (stamp != 0) {
+	    this.writer = null;
+	    this.lock.unlockWrite(stamp);
+	}
+    }
+
+    /** Takes the read lock, unless unsynchronized or this thread is writing; returns 0 if not taken */
+    private long readLock() {
+	if ((this.lock == null)||(this.writer == Thread.currentThread())) {
+	    return 0;
+	}
+	return this.lock.readLock();
+    }
+
+    /** Releases a read lock taken by readLock() */
+    private void unlockRead(long stamp) {
+	if (stamp != 0) {
+	    this.lock.unlockRead(stamp);
+	}
+    }
+
+    /**
+     * Runs a lookup under an optimistic read, running it again under
+     * the read lock if a change got in the way.  A change can also make
+     * the lookup throw from half-updated lists, which counts the same.
+     */
+    private <T> T optimisticRead(Supplier<T> lookup) {
+	long stamp = this.lock.tryOptimisticRead();
+	if (stamp != 0) {
+	    try {
+		T value = lookup.get();
+		if (this.lock.validate(stamp)) {
+		    return value;
+		}
+	    } catch (RuntimeException e) {
+		if (this.lock.validate(stamp)) {
+		    throw e;
+		}
+	    }
+	}
+	stamp = readLock();
+	try {
+	    return lookup.get();
+	} finally {
+	    unlockRead(stamp);
+	}
+    }
+
+    /**
+     * Sets how edge weights are computed from edge data, and reweighs
+     * every edge.  Weights are kept as primitive doubles on the edges,
+     * recomputed only when the data changes, so routing never unboxes.
+     * The default uses numeric data as the weight and 1.0 otherwise.
+     */
+    public void setWeigher(ToDoubleFunction<? super E> weigher) {
+	long stamp = writeLock();
+	try {
+	    this.weigher = weigher;
+	    for (Edge e : this.edges) {
+		e.weight = weigher.applyAsDouble(e.getData());
+		this.edgeVector.set(e.getIndex(), new GraphSnapshot.EdgeState<V, E>(e));
+	    }
+	    this.modCount++;
+	} finally {
+	    unlockWrite(stamp);
+	}
+    }
+
+    /** Adds a listener to be told about every change to the graph */
+    public void addListener(GraphListener<V, E> listener) {
+	long stamp = writeLock();
+	try {
+	    this.listeners.add(listener);
+	} finally {
+	    unlockWrite(stamp);
+	}
+    }
+
+    /** Removes a listener */
+    public void removeListener(GraphListener<V, E> listener) {
+	long stamp = writeLock();
+	try {
+	    this.listeners.remove(listener);
+	} finally {
+	    unlockWrite(stamp);
+	}
+    }
+
+    /**
+     * Turns on the spatial index over node locations, read from node
+     * data by the locator.  Nodes are indexed as they are added; call
+     * relocate() after moving a node by changing its data in place.
+     */
+    public void indexLocations(Function<? super V, Point> locator) {
+	long stamp = writeLock();
+	try {
+	    this.locator = locator;
+	    this.spatial = new SpatialIndex<Node>(32);
+	    for (Node node : this.nodes) {
+		indexLocation(node);
+	    }
+	} finally {
+	    unlockWrite(stamp);
+	}
+    }
+
+    /** Tells the graph that a node's location has changed */
+    public void relocate(Node node) {
+	long stamp = writeLock();
+	try {
+	    this.modCount++;
+	    if (nodeIndex(node) >= 0) {
+		if (this.spatial != null) {
+		    indexLocation(node);
+		}
+		for (GraphListener<V, E> l : this.listeners) {
+		    l.nodeChanged(node);
+		}
+	    }
+	} finally {
+	    unlockWrite(stamp);
+	}
+    }
+
+    /** Returns the node nearest a location and strictly closer than maxDistance, or null */
+    public Node nearestNode(int x, int y, double maxDistance) {
+	long stamp = readLock();
+	try {
+	    return spatialIndex().nearest(x, y, maxDistance);
+	} finally {
+	    unlockRead(stamp);
+	}
+    }
+
+    /** Returns all nodes strictly closer than radius to a location */
+    public ArrayList<Node> nodesWithin(int x, int y, double radius) {
+	long stamp = readLock();
+	try {
+	    return spatialIndex().within(x, y, radius);
+	} finally {
+	    unlockRead(stamp);
+	}
+    }
+
+    /** Returns all nodes inside a rectangle (edges included) */
+    public ArrayList<Node> nodesInRectangle(Rectangle r) {
+	long stamp = readLock();
+	try {
+	    return spatialIndex().inRectangle(r);
+	} finally {
+	    unlockRead(stamp);
+	}
+    }
+
+    /** Returns the spatial index, failing if locations aren't indexed */
+    private SpatialIndex<Node> spatialIndex() {
+	if (this.spatial == null) {
+	    throw new IllegalStateException("Node locations are not indexed");
+	}
+	return this.spatial;
+    }
+
+    /** Puts a node into the spatial index at its current location */
+    private void indexLocation(Node node) {
+	Point p = this.locator.apply(node.getData());
+	if (p == null) {
+	    this.spatial.remove(node);
+	} else {
+	    this.spatial.insert(node, p.x, p.y);
+	}
+    }
+
+    /** Makes room for the given numbers of nodes and edges without regrowing */
+    public void ensureCapacity(int nodeCount, int edgeCount) {
+	long stamp = writeLock();
+	try {
+	    this.nodes.ensureCapacity(nodeCount);
+	    this.edges.ensureCapacity(edgeCount);
+	} finally {
+	    unlockWrite(stamp);
+	}
+    }
+
+    /** Returns a counter that changes whenever the graph is modified */
+    public int getModCount() {
+	if (this.lock == null) {
+	    return this.modCount;
+	}
+	return optimisticRead(() -> this.modCount);
+    }
+
+    /**
+     * Returns an immutable compact (CSR) view of the graph's current
+     * adjacency.  The view is cached until the graph next changes, so
+     * repeated algorithm runs on an unchanged graph share it.
+     */
+    public CompactGraph<V, E> freeze() {
+	long stamp = readLock();
+	try {
+	    synchronized (this.freezeLock) {
+		if ((this.frozen == null)||(this.frozenModCount != this.modCount)) {
+		    this.frozen = buildCompact();
+		    this.frozenModCount = this.modCount;
+		}
+		return this.frozen;
+	    }
+	} finally {
+	    unlockRead(stamp);
+	}
+    }
+
+    /**
+     * Returns an immutable snapshot of the nodes and edges, in O(1).
+     * It shares storage with the graph, and later changes copy only
+     * the small parts of that storage they touch, so snapshots can be
+     * read without locking for as long as needed (see GraphSnapshot).
+     */
+    public GraphSnapshot<V, E> snapshot() {
+	long stamp = writeLock();
+	try {
+	    PersistentVector<Node> n = this.nodeVector.persistent();
+	    PersistentVector<GraphSnapshot.EdgeState<V, E>> e = this.edgeVector.persistent();
+	    this.nodeVector = n.asTransient();
+	    this.edgeVector = e.asTransient();
+	    return new GraphSnapshot<V, E>(n, e, this.modCount);
+	} finally {
+	    unlockWrite(stamp);
+	}
+    }
+
+    /** Updates an edge's entry in the snapshot storage, if it is in the graph */
+    private void recordEdge(Edge edge) {
+	int index = edgeIndex(edge);
+	if (index >= 0) {
+	    this.edgeVector.set(index, new GraphSnapshot.EdgeState<V, E>(edge));
+	}
+    }
+
+    /** Packs nodes and edges into a new compact view */
+    private CompactGraph<V, E> buildCompact() {
+	int n = this.nodes.size();
+	int m = this.edges.size();
+	// Count each node's arcs, then turn the counts into start offsets
+	int[] offsets = new int[n+1];
+	for (Edge e : this.edges) {
+	    offsets[e.getHead().getIndex()+1]++;
+	    offsets[e.getTail().getIndex()+1]++;
+	}
+	for (int i = 0; i < n; i++) {
+	    offsets[i+1] += offsets[i];
+	}
+	int[] fill = Arrays.copyOf(offsets, n);
+	int[] targets = new int[2*m];
+	double[] weights = new double[2*m];
+	int[] arcEdges = new int[2*m];
+	for (int j = 0; j < m; j++) {
+	    Edge e = this.edges.get(j);
+	    int head = e.getHead().getIndex();
+	    int tail = e.getTail().getIndex();
+	    double w = e.getWeight();
+	    int a = fill[head]++;
+	    targets[a] = tail;
+	    weights[a] = w;
+	    arcEdges[a] = j;
+	    a = fill[tail]++;
+	    targets[a] = head;
+	    weights[a] = w;
+	    arcEdges[a] = j;
+	}
+	return new CompactGraph<V, E>(new ArrayList<Node>(this.nodes), new ArrayList<Edge>(this.edges), offsets, targets, weights, arcEdges);
     }
 
     /** Returns the edge at the given index */
     public Edge getEdge(int i) {
-	return this.edges.get(i);
+	if (this.lock == null) {
+	    return this.edges.get(i);
+	}
+	return optimisticRead(() -> this.edges.get(i));
     }
 
     /** Returns the node at the given index */
     public Node getNode(int i) {
-	return this.nodes.get(i);
+	if (this.lock == null) {
+	    return this.nodes.get(i);
+	}
+	return optimisticRead(() -> this.nodes.get(i));
     }
 
-    /** Returns index of a node in the master list */
+    /** Returns index of a node in the master list, or -1 if it isn't there */
     public int getNodeIndex(Node node) {
-	return this.nodes.indexOf(node);
+	if (this.lock != null) {
+	    return optimisticRead(() -> nodeIndex(node));
+	}
+	return nodeIndex(node);
     }
 
-    /** Returns an edge specified by its node endpoints */
-    public Edge getEdgeRef(Node head, Node tail) {
-	Edge foundEdge = null;
-	Edge refEdge = new Edge(null, head, tail);
-	if (this.edges.contains(refEdge)) {
-	    int index = this.edges.indexOf(refEdge);
-	    foundEdge = this.edges.get(index);
+    /** Looks up a node's master list index without locking */
+    private int nodeIndex(Node node) {
+	int i = node.getIndex();
+	if ((i < 0)||(i >= this.nodes.size())||(this.nodes.get(i) != node)) {
+	    i = -1;
 	}
-	return foundEdge;
+	return i;
+    }
+
+    /** Returns index of an edge in the master list, or -1 if it isn't there */
+    public int getEdgeIndex(Edge edge) {
+	if (this.lock != null) {
+	    return optimisticRead(() -> edgeIndex(edge));
+	}
+	return edgeIndex(edge);
+    }
+
+    /** Looks up an edge's master list index without locking */
+    private int edgeIndex(Edge edge) {
+	int i = edge.getIndex();
+	if ((i < 0)||(i >= this.edges.size())||(this.edges.get(i) != edge)) {
+	    i = -1;
+	}
+	return i;
+    }
+
+    /** Returns an edge specified by its node endpoints, or null if none */
+    public Edge getEdgeRef(Node head, Node tail) {
+	return head.edgeTo(tail);
     }
 
     /** Returns number of edges in edge list */
     public int numEdges() {
-	return edges.size();
+	if (this.lock == null) {
+	    return this.edges.size();
+	}
+	return optimisticRead(() -> this.edges.size());
     }
 
     /** Returns number of nodes in node list */
     public int numNodes() {
-	return nodes.size();
+	if (this.lock == null) {
+	    return this.nodes.size();
+	}
+	return optimisticRead(() -> this.nodes.size());
     }
 
     /** Adds an edge with given data, head, and tail */
     public void addEdge(E data, Node head, Node tail) {
-	// Only add edge if the head and tail aren't the same
-	// and aren't already connected
-	if ((!head.equals(tail))&&(!head.isNeighbor(tail))) {
-	    Edge e = new Edge(data, head, tail);
-	    // Add to master edge list
-	    this.edges.add(e);
-	    // Add to head's edge list
-	    head.addEdge(e);
-	    // Add to tail's edge list
-	    tail.addEdge(e);
+	long stamp = writeLock();
+	try {
+	    // Only add edge if the head and tail aren't the same
+	    // and aren't already connected
+	    if ((!head.equals(tail))&&(!head.isNeighbor(tail))) {
+		Edge e = new Edge(data, head, tail);
+		this.modCount++;
+		// Add to master edge list
+		e.setIndex(this.edges.size());
+		this.edges.add(e);
+		this.edgeVector.push(new GraphSnapshot.EdgeState<V, E>(e));
+		// Add to head's edge list
+		head.addEdge(e);
+		// Add to tail's edge list
+		tail.addEdge(e);
+		for (GraphListener<V, E> l : this.listeners) {
+		    l.edgeAdded(e);
+		}
+	    }
+	} finally {
+	    unlockWrite(stamp);
 	}
     }
 
     /** Adds a node with given data */
     public void addNode(V data) {
-	// Only needs to update master node list to begin with
-	this.nodes.add(new Node(data));
+	long stamp = writeLock();
+	try {
+	    // Only needs to update master node list to begin with
+	    Node node = new Node(data);
+	    node.setIndex(this.nodes.size());
+	    this.nodes.add(node);
+	    this.nodeVector.push(node);
+	    this.modCount++;
+	    if (this.spatial != null) {
+		indexLocation(node);
+	    }
+	    for (GraphListener<V, E> l : this.listeners) {
+		l.nodeAdded(node);
+	    }
+	} finally {
+	    unlockWrite(stamp);
+	}
+    }
+
+    /**
+     * Adds a batch of nodes and edges in one step, for GraphBuilder.
+     * Edge ends are positions in nodeData.  Storage is sized once, and
+     * self-loops and repeated edges are dropped in a single pass over a
+     * hash of packed end pairs instead of a neighbor check per edge.
+     * Edge lists are then filled node by node, on the common pool if
+     * parallel is set.  The write lock is held throughout, so other
+     * threads see all of the batch or none of it.
+     */
+    void addBatch(List<? extends V> nodeData, List<? extends E> edgeData, int[] heads, int[] tails, boolean parallel) {
+	long stamp = writeLock();
+	try {
+	    int n = nodeData.size();
+	    int[] kept = distinctEdges(edgeData.size(), heads, tails);
+	    int m = kept.length;
+	    // Group the kept edges by end, in edge order, so each node's list
+	    // comes out as it would from adding the edges one at a time
+	    int[] offsets = new int[n+1];
+	    for (int k : kept) {
+		offsets[heads[k]+1]++;
+		offsets[tails[k]+1]++;
+	    }
+	    for (int i = 0; i < n; i++) {
+		offsets[i+1] += offsets[i];
+	    }
+	    int[] fill = Arrays.copyOf(offsets, n);
+	    int[] ends = new int[2*m];
+	    for (int j = 0; j < m; j++) {
+		ends[fill[heads[kept[j]]]++] = j;
+		ends[fill[tails[kept[j]]]++] = j;
+	    }
+	    int nodeBase = this.nodes.size();
+	    int edgeBase = this.edges.size();
+	    this.nodes.ensureCapacity(nodeBase+n);
+	    this.edges.ensureCapacity(edgeBase+m);
+	    ArrayList<Node> added = new ArrayList<Node>(n);
+	    for (int i = 0; i < n; i++) {
+		Node node = new Node(nodeData.get(i), offsets[i+1]-offsets[i]);
+		node.setIndex(nodeBase+i);
+		added.add(node);
+	    }
+	    ArrayList<Edge> made = new ArrayList<Edge>(Collections.nCopies(m, (Edge)null));
+	    IntStream edgeRange = parallel ? IntStream.range(0, m).parallel() : IntStream.range(0, m);
+	    edgeRange.forEach(j -> {
+		int k = kept[j];
+		Edge e = new Edge(edgeData.get(k), added.get(heads[k]), added.get(tails[k]));
+		e.setIndex(edgeBase+j);
+		made.set(j, e);
+	    });
+	    IntStream nodeRange = parallel ? IntStream.range(0, n).parallel() : IntStream.range(0, n);
+	    nodeRange.forEach(i -> {
+		Node node = added.get(i);
+		for (int a = offsets[i]; a < offsets[i+1]; a++) {
+		    node.link(made.get(ends[a]));
+		}
+	    });
+	    this.nodes.addAll(added);
+	    this.edges.addAll(made);
+	    for (Node node : added) {
+		this.nodeVector.push(node);
+	    }
+	    for (Edge e : made) {
+		this.edgeVector.push(new GraphSnapshot.EdgeState<V, E>(e));
+	    }
+	    this.modCount++;
+	    for (Node node : added) {
+		if (this.spatial != null) {
+		    indexLocation(node);
+		}
+		for (GraphListener<V, E> l : this.listeners) {
+		    l.nodeAdded(node);
+		}
+	    }
+	    for (Edge e : made) {
+		for (GraphListener<V, E> l : this.listeners) {
+		    l.edgeAdded(e);
+		}
+	    }
+	} finally {
+	    unlockWrite(stamp);
+	}
     }
 
-    /** Removes a specific edge */
+    /**
+     * Returns the positions of the edges to keep from a batch: not
+     * self-loops, and not joining a pair of nodes an earlier edge
+     * joins.  Pairs are packed into longs in an open-addressed table.
+     */
+    private static int[] distinctEdges(int count, int[] heads, int[] tails) {
+	int capacity = (int)Math.min(1 << 30, Long.highestOneBit(Math.max(2L*count, 2)-1) << 1);
+	long[] table = new long[capacity];
+	Arrays.fill(table, -1L);
+	int[] kept = new int[count];
+	int m = 0;
+	for (int k = 0; k < count; k++) {
+	    int a = Math.min(heads[k], tails[k]);
+	    int b = Math.max(heads[k], tails[k]);
+	    if (a == b) {
+		continue;
+	    }
+	    long key = (((long)a) << 32)|b;
+	    int slot = (int)((key*0x9E3779B97F4A7C15L) >>> 34) & (capacity-1);
+	    while ((table[slot] != -1L)&&(table[slot] != key)) {
+		slot = (slot+1) & (capacity-1);
+	    }
+	    if (table[slot] != key) {
+		table[slot] = key;
+		kept[m++] = k;
+	    }
+	}
+	return Arrays.copyOf(kept, m);
+    }
+
+    /**
+     * Removes an edge.  An edge that isn't itself in the graph stands for
+     * the graph's edge with the same endpoints, if there is one.
+     */
     public void removeEdge(Edge edge) {
-	// Should remove 3 links to the edge
-	this.edges.remove(edge);
-	edge.getHead().removeEdge(edge);
-	edge.getTail().removeEdge(edge);
+	long stamp = writeLock();
+	try {
+	    // Should remove 3 links to the edge
+	    int index = edgeIndex(edge);
+	    if (index < 0) {
+		Edge same = edge.getHead().edgeTo(edge.getTail());
+		if (same != null) {
+		    edge = same;
+		    index = edgeIndex(edge);
+		}
+	    }
+	    if (index >= 0) {
+		for (GraphListener<V, E> l : this.listeners) {
+		    l.edgeRemoved(edge);
+		}
+		this.modCount++;
+		// Fill the hole with the last edge so removal is O(1)
+		Edge last = this.edges.remove(this.edges.size()-1);
+		if (last != edge) {
+		    this.edges.set(index, last);
+		    last.setIndex(index);
+		    this.edgeVector.set(index, this.edgeVector.get(this.edges.size()));
+		}
+		this.edgeVector.pop();
+		edge.setIndex(-1);
+		edge.getHead().removeEdge(edge);
+		edge.getTail().removeEdge(edge);
+	    }
+	} finally {
+	    unlockWrite(stamp);
+	}
     }
 
     /** Removes an edge specified by head and tail */
     public void removeEdge(Node head, Node tail) {
-	this.removeEdge(this.getEdgeRef(head, tail));
+	long stamp = writeLock();
+	try {
+	    Edge edge = this.getEdgeRef(head, tail);
+	    if (edge != null) {
+		this.removeEdge(edge);
+	    }
+	} finally {
+	    unlockWrite(stamp);
+	}
     }
 
     /** Removes a specific node */
     public void removeNode(Node node) {
-	// Should remove master list link and all edges to the node
-	while (node.getEdgeList().size() != 0) {
-	    this.removeEdge(node.getEdgeList().get(0));
+	long stamp = writeLock();
+	try {
+	    // Should remove master list link and all edges to the node
+	    // (from the back of the edge list, so nothing has to shift)
+	    while (node.getEdgeList().size() != 0) {
+		this.removeEdge(node.getEdgeList().get(node.getEdgeList().size()-1));
+	    }
+	    int index = nodeIndex(node);
+	    if (index >= 0) {
+		for (GraphListener<V, E> l : this.listeners) {
+		    l.nodeRemoved(node);
+		}
+		this.modCount++;
+		// Fill the hole with the last node so removal is O(1)
+		Node last = this.nodes.remove(this.nodes.size()-1);
+		if (last != node) {
+		    this.nodes.set(index, last);
+		    last.setIndex(index);
+		    this.nodeVector.set(index, last);
+		}
+		this.nodeVector.pop();
+		node.setIndex(-1);
+		if (this.spatial != null) {
+		    this.spatial.remove(node);
+		}
+	    }
+	} finally {
+	    unlockWrite(stamp);
 	}
-	this.nodes.remove(node);
     }
 
-    /** Breadth-first traversal of the graph */
-    public HashSet BFT (Node start) {
-	// Queue for traversal
-	LinkedList<Node> queue = new LinkedList<Node>();
-	// HashSet for seen nodes
-	HashSet<Node> seen = new HashSet<Node>();
-	// Traversal
-	seen.add(start);
-	queue.add(start);
-	while (queue.peek() != null) {
-	    Node currentNode = queue.remove();
-	    currentNode.visit();
-	    for (Node n : currentNode.getNeighbors()) {
-		if (!seen.contains(n)) {
-		    seen.add(n);
-		    queue.add(n);
-		}
+    /** Removes every node and edge, in time linear in the graph size */
+    public void clear() {
+	long stamp = writeLock();
+	try {
+	    for (GraphListener<V, E> l : this.listeners) {
+		l.cleared();
+	    }
+	    for (Node node : this.nodes) {
+		node.clearEdges();
+		node.setIndex(-1);
+	    }
+	    for (Edge edge : this.edges) {
+		edge.setIndex(-1);
+	    }
+	    this.nodes.clear();
+	    this.edges.clear();
+	    this.nodeVector = PersistentVector.<Node>empty().asTransient();
+	    this.edgeVector = PersistentVector.<GraphSnapshot.EdgeState<V, E>>empty().asTransient();
+	    this.modCount++;
+	    if (this.spatial != null) {
+		this.spatial.clear();
 	    }
+	} finally {
+	    unlockWrite(stamp);
 	}
+    }
+
+    /**
+     * Returns a stream over the nodes.  Don't change the graph while it
+     * is in use, unless the graph is concurrent: then the stream is over
+     * the frozen view and later changes don't show up in it.
+     */
+    public Stream<Node> nodes() {
+	if (this.lock != null) {
+	    return freeze().nodeList().stream();
+	}
+	return Collections.unmodifiableList(this.nodes).stream();
+    }
+
+    /** Returns a stream over the edges, on the same terms as nodes() */
+    public Stream<Edge> edges() {
+	if (this.lock != null) {
+	    CompactGraph<V, E> c = freeze();
+	    return IntStream.range(0, c.numEdges()).mapToObj(c::getEdge);
+	}
+	return Collections.unmodifiableList(this.edges).stream();
+    }
+
+    /** Breadth-first traversal of the graph, returning the nodes reached */
+    public HashSet<Node> BFT (Node start) {
+	HashSet<Node> seen = new HashSet<Node>();
+	breadthFirst(start, seen::add);
 	return seen;
     }
 
@@ -130,139 +752,393 @@ public class Graph<V, E> extends Object {
 	return nodes;
     }
 
-    /** Depth-first traversal of the graph */
+    /** Depth-first traversal of the graph, skipping nodes already seen */
     public HashSet<Node> DFTRecurse (Node start, HashSet<Node> seen) {
-	if (!seen.contains(start)) {
-	    start.visit();
-	    seen.add(start);
-	    for (Node n : start.getNeighbors()) {
-		DFTRecurse(n, seen);
+	CompactGraph<V, E> c = this.freeze();
+	long[] seenIds = new long[(c.numNodes()+63) >>> 6];
+	for (Node n : seen) {
+	    int id = c.idOf(n);
+	    if (id >= 0) {
+		seenIds[id >>> 6] |= 1L << (id & 63);
 	    }
 	}
+	new DepthFirstWalk(c, idIn(c, start), seenIds).forEachRemaining(seen::add);
 	return seen;
     }
 
+    /** Returns a node's id in a view of this graph, checking it is there */
+    private int idIn (CompactGraph<V, E> c, Node node) {
+	int id = c.idOf(node);
+	if (id < 0) {
+	    throw new IllegalArgumentException("Node is not in the graph");
+	}
+	return id;
+    }
+
+    /** Calls the visitor on each node reachable from the start node, in breadth-first order */
+    public void breadthFirst (Node start, Consumer<? super Node> visitor) {
+	CompactGraph<V, E> c = this.freeze();
+	new BreadthFirstWalk(c, idIn(c, start)).forEachRemaining(visitor);
+    }
+
+    /** Calls the visitor on each node reachable from the start node, in depth-first preorder */
+    public void depthFirst (Node start, Consumer<? super Node> visitor) {
+	CompactGraph<V, E> c = this.freeze();
+	new DepthFirstWalk(c, idIn(c, start), new long[(c.numNodes()+63) >>> 6]).forEachRemaining(visitor);
+    }
+
+    /**
+     * Returns a lazy stream over the nodes reachable from the start
+     * node, in breadth-first order.  The traversal only goes as far as
+     * the stream is consumed; a parallel stream hands out batches of
+     * traversed nodes to other threads.
+     */
+    public Stream<Node> breadthFirst (Node start) {
+	CompactGraph<V, E> c = this.freeze();
+	return walkStream(new BreadthFirstWalk(c, idIn(c, start)));
+    }
+
+    /** Returns a lazy stream over the nodes reachable from the start node, in depth-first preorder */
+    public Stream<Node> depthFirst (Node start) {
+	CompactGraph<V, E> c = this.freeze();
+	return walkStream(new DepthFirstWalk(c, idIn(c, start), new long[(c.numNodes()+63) >>> 6]));
+    }
+
+    /** Returns the nodes reachable from the start node, in breadth-first order */
+    public ArrayList<Node> breadthFirstOrder (Node start) {
+	CompactGraph<V, E> c = this.freeze();
+	BreadthFirstSearch<V, E> bfs = new BreadthFirstSearch<V, E>(c, ForkJoinPool.commonPool());
+	bfs.run(idIn(c, start));
+	ArrayList<Node> result = new ArrayList<Node>();
+	for (int id : bfs.getOrder()) {
+	    result.add(c.getNode(id));
+	}
+	return result;
+    }
+
+    /**
+     * Returns the nodes reachable from the start node grouped by number
+     * of hops, so level 0 holds just the start node.  Levels are found in
+     * parallel (see BreadthFirstSearch).
+     */
+    public ArrayList<ArrayList<Node>> levels (Node start) {
+	CompactGraph<V, E> c = this.freeze();
+	BreadthFirstSearch<V, E> bfs = new BreadthFirstSearch<V, E>(c, ForkJoinPool.commonPool());
+	bfs.run(idIn(c, start));
+	int[] order = bfs.getOrder();
+	int[] starts = bfs.getLevelStarts();
+	ArrayList<ArrayList<Node>> result = new ArrayList<ArrayList<Node>>(starts.length-1);
+	for (int l = 0; l+1 < starts.length; l++) {
+	    ArrayList<Node> level = new ArrayList<Node>(starts[l+1]-starts[l]);
+	    for (int k = starts[l]; k < starts[l+1]; k++) {
+		level.add(c.getNode(order[k]));
+	    }
+	    result.add(level);
+	}
+	return result;
+    }
+
+    /** Returns the nodes reachable from the start node, in depth-first preorder */
+    public ArrayList<Node> depthFirstOrder (Node start) {
+	ArrayList<Node> result = new ArrayList<Node>();
+	depthFirst(start, result::add);
+	return result;
+    }
+
+    /** Wraps a traversal in a stream that splits off batches for parallel use */
+    private Stream<Node> walkStream (Iterator<Node> walk) {
+	int characteristics = Spliterator.ORDERED|Spliterator.DISTINCT|Spliterator.NONNULL;
+	return StreamSupport.stream(Spliterators.spliteratorUnknownSize(walk, characteristics), false);
+    }
+
     /** Finds shortest path from one node to any other node */
     public DijkstraResults<V, E> distance (Node start) {
-	// Hashtable for cost
-	Hashtable<Node, Double> cost = new Hashtable<Node, Double>();
-	// Hashtable for signpost
-	Hashtable<Node, Node> signpost = new Hashtable<Node, Node>();
-	// Hashset for visited
-	HashSet<Node> visited = new HashSet<Node>(); 
-	// Hashtable for unvisited
-	Hashtable<Node, Double> unvisited = new Hashtable<Node, Double>();
-
-	// Add all nodes to cost and unvisited hashtables with infinite cost 
-	// (except start - cost of 0)
-	// Add nodes to signpost hashtable with themselves as signpost
-	for (Node n : this.nodes) {
-	    if (n.equals(start)) {
-		cost.put(n, 0.0);
-		unvisited.put(n, 0.0);
-	    } else {
-		cost.put(n, Double.MAX_VALUE);
-		unvisited.put(n, Double.MAX_VALUE);
-	    }
-	    signpost.put(n, n);
+	return this.distance(start, null);
+    }
+
+    /**
+     * Finds shortest paths from the start node, stopping as soon as the
+     * target node is settled.  With a null target every reachable node
+     * is settled.  Uses an indexed heap over node indices, so a full run
+     * is O((V+E) log V).
+     */
+    public DijkstraResults<V, E> distance (Node start, Node target) {
+	CompactGraph<V, E> c = this.freeze();
+	int n = c.numNodes();
+	// Cost, signpost and visited arrays, indexed by node index
+	double[] cost = new double[n];
+	int[] signpost = new int[n];
+	boolean[] settled = new boolean[n];
+	// Every node starts at infinite cost with itself as signpost
+	Arrays.fill(cost, Double.MAX_VALUE);
+	for (int i = 0; i < n; i++) {
+	    signpost[i] = i;
 	}
-	
-	// For each unvisited node, take the one with lowest cost
+	int source = idIn(c, start);
+	int goal = (target == null) ? -1 : idIn(c, target);
+	IndexedMinHeap unvisited = new IndexedMinHeap(n);
+	cost[source] = 0.0;
+	unvisited.push(source, 0.0);
+
+	// Repeatedly settle the unvisited node with lowest cost
 	while (!unvisited.isEmpty()) {
-	    Node currentNode = null;
-	    double lowValue = Collections.max(unvisited.values());
-	    for (Map.Entry<Node, Double> entry : unvisited.entrySet()) {
-		if (entry.getValue() == lowValue) {
-		    currentNode =  entry.getKey();
-		}
+	    int current = unvisited.poll();
+	    settled[current] = true;
+	    if (current == goal) {
+		break;
 	    }
-	    unvisited.remove(currentNode);
-	    visited.add(currentNode);
 	    // Check if the node's neighbors benefit from going through this node
-	    for (Node node : currentNode.getNeighbors()) {
-		Edge e = currentNode.edgeTo(node);
-		double possCost;
-		if (e.getData() instanceof Number) {
-		    Number n  = (Number)e.getData();
-		    double data = n.doubleValue();
-		    possCost = data+cost.get(currentNode);
-		} else {
-		    possCost = 1.0+cost.get(currentNode);
+	    for (int a = c.firstArc(current); a < c.endArc(current); a++) {
+		int next = c.target(a);
+		if (settled[next]) {
+		    continue;
 		}
+		double possCost = cost[current]+c.weight(a);
 		// If the neighbor does benefit, update its cost and signpost
-		if (possCost < cost.get(node)) {
-		    cost.put(node, possCost);
-		    unvisited.put(node, possCost);
-		    signpost.put(node, currentNode);
+		if (possCost < cost[next]) {
+		    cost[next] = possCost;
+		    signpost[next] = current;
+		    unvisited.push(next, possCost);
 		}
 	    }
 	}
-	DijkstraResults<V,E> results = new DijkstraResults<V,E> (cost, signpost);
+	DijkstraResults<V,E> results = new DijkstraResults<V,E> (c.nodeList(), cost, signpost, settled);
 	return results;
     }
 
+    /**
+     * Finds a shortest path from the start node to the target with A*:
+     * nodes are settled in order of cost so far plus the heuristic's
+     * estimate of the cost still to go, so the search heads toward the
+     * target and stops as soon as it is settled.  The heuristic must be
+     * consistent (see Heuristic); with one that always returns 0 this
+     * is the same as distance(start, target).  Only the target and the
+     * nodes on its path are guaranteed settled in the results.
+     */
+    public DijkstraResults<V, E> distance (Node start, Node target, Heuristic<? super V> heuristic) {
+	CompactGraph<V, E> c = this.freeze();
+	int n = c.numNodes();
+	double[] cost = new double[n];
+	int[] signpost = new int[n];
+	boolean[] settled = new boolean[n];
+	// Estimates are computed once per node reached, NaN until then
+	double[] estimate = new double[n];
+	Arrays.fill(cost, Double.MAX_VALUE);
+	Arrays.fill(estimate, Double.NaN);
+	for (int i = 0; i < n; i++) {
+	    signpost[i] = i;
+	}
+	int source = idIn(c, start);
+	int goal = idIn(c, target);
+	V goalData = target.getData();
+	IndexedMinHeap unvisited = new IndexedMinHeap(n);
+	cost[source] = 0.0;
+	unvisited.push(source, heuristic.estimate(start.getData(), goalData));
+
+	while (!unvisited.isEmpty()) {
+	    int current = unvisited.poll();
+	    settled[current] = true;
+	    if (current == goal) {
+		break;
+	    }
+	    for (int a = c.firstArc(current); a < c.endArc(current); a++) {
+		int next = c.target(a);
+		if (settled[next]) {
+		    continue;
+		}
+		double possCost = cost[current]+c.weight(a);
+		if (possCost < cost[next]) {
+		    if (Double.isNaN(estimate[next])) {
+			estimate[next] = heuristic.estimate(c.getNode(next).getData(), goalData);
+		    }
+		    cost[next] = possCost;
+		    signpost[next] = current;
+		    unvisited.push(next, possCost+estimate[next]);
+		}
+	    }
+	}
+	return new DijkstraResults<V,E> (c.nodeList(), cost, signpost, settled);
+    }
+
+    /**
+     * Finds a shortest path between two nodes by searching from both
+     * ends at once, always growing the side whose frontier is nearer.
+     * The best path seen through an edge joining the two searches is
+     * kept, and the search stops once the two frontier costs add up to
+     * at least its cost, as no shorter path can remain.  Needs no node
+     * locations.  In the results the path is settled and can be read
+     * with order(target); other nodes carry forward search costs.
+     */
+    public DijkstraResults<V, E> bidirectionalDistance (Node start, Node target) {
+	CompactGraph<V, E> c = this.freeze();
+	int n = c.numNodes();
+	int source = idIn(c, start);
+	int goal = idIn(c, target);
+	// Forward search from the start, backward search from the target
+	double[] costF = new double[n];
+	double[] costB = new double[n];
+	int[] signpostF = new int[n];
+	int[] signpostB = new int[n];
+	boolean[] settledF = new boolean[n];
+	boolean[] settledB = new boolean[n];
+	Arrays.fill(costF, Double.MAX_VALUE);
+	Arrays.fill(costB, Double.MAX_VALUE);
+	for (int i = 0; i < n; i++) {
+	    signpostF[i] = i;
+	    signpostB[i] = i;
+	}
+	IndexedMinHeap heapF = new IndexedMinHeap(n);
+	IndexedMinHeap heapB = new IndexedMinHeap(n);
+	costF[source] = 0.0;
+	costB[goal] = 0.0;
+	heapF.push(source, 0.0);
+	heapB.push(goal, 0.0);
+	// Best path so far: cost, and the edge (as an arc) joining the two searches
+	double best = (source == goal) ? 0.0 : Double.MAX_VALUE;
+	int meetFrom = source;
+	int meetTo = goal;
+
+	while ((!heapF.isEmpty())&&(!heapB.isEmpty())&&(heapF.peekKey()+heapB.peekKey() < best)) {
+	    boolean forward = heapF.peekKey() <= heapB.peekKey();
+	    IndexedMinHeap heap = forward ? heapF : heapB;
+	    double[] cost = forward ? costF : costB;
+	    double[] other = forward ? costB : costF;
+	    int[] signpost = forward ? signpostF : signpostB;
+	    boolean[] settled = forward ? settledF : settledB;
+	    int current = heap.poll();
+	    settled[current] = true;
+	    for (int a = c.firstArc(current); a < c.endArc(current); a++) {
+		int next = c.target(a);
+		double possCost = cost[current]+c.weight(a);
+		if ((!settled[next])&&(possCost < cost[next])) {
+		    cost[next] = possCost;
+		    signpost[next] = current;
+		    heap.push(next, possCost);
+		}
+		// A path through this edge, if the other search has reached its far end
+		if ((other[next] != Double.MAX_VALUE)&&(possCost+other[next] < best)) {
+		    best = possCost+other[next];
+		    meetFrom = forward ? current : next;
+		    meetTo = forward ? next : current;
+		}
+	    }
+	}
+
+	// Forward costs and signposts, with the path's second half spliced in
+	if (best != Double.MAX_VALUE) {
+	    settledF[source] = true;
+	    for (int i = meetFrom; i != signpostF[i]; i = signpostF[i]) {
+		settledF[i] = true;
+	    }
+	    int prev = meetFrom;
+	    for (int i = meetTo; prev != goal; i = signpostB[i]) {
+		if (i != meetFrom) {
+		    costF[i] = best-costB[i];
+		    signpostF[i] = prev;
+		}
+		settledF[i] = true;
+		prev = i;
+	    }
+	}
+	return new DijkstraResults<V,E> (c.nodeList(), costF, signpostF, settledF);
+    }
+
+    /**
+     * Finds shortest paths from one node to every other, like
+     * distance(start), but relaxing edges in parallel (see DeltaStepping)
+     */
+    public DijkstraResults<V, E> parallelDistance (Node start) {
+	return DeltaStepping.run(this, start);
+    }
+
+    /**
+     * Returns shortest path costs from each source to each target,
+     * row-major, computed in parallel (see DistanceMatrix)
+     */
+    public double[] distanceMatrix (List<Node> sources, List<Node> targets) {
+	return DistanceMatrix.compute(this, sources, targets);
+    }
+
+    /** Default weigher: edge data if numeric, otherwise 1.0 */
+    private static double defaultWeight(Object data) {
+	if (data instanceof Number) {
+	    return ((Number)data).doubleValue();
+	}
+	return 1.0;
+    }
+
     /** Prints graph: each node and its edges, then each edge and its nodes */
     public void print() {
-	for (Node node : this.nodes) {
-	    System.out.println("Node '"+node.getData()+"'");
-	    for (Edge e : node.getEdgeList()) {
-		System.out.println("    Edge '"+e.getData()+"'");
+	long stamp = readLock();
+	try {
+	    for (Node node : this.nodes) {
+		System.out.println("Node '"+node.getData()+"'");
+		for (Edge e : node.getEdgeList()) {
+		    System.out.println("    Edge '"+e.getData()+"'");
+		}
 	    }
-	}
-	for (Edge edge : this.edges) {
-	    System.out.println("Edge '"+edge.getData()+"'");
-	    System.out.println("    Head: Node '"+edge.getHead().getData()+"'");
-	    System.out.println("    Tail: Node '"+edge.getTail().getData()+"'");
+	    for (Edge edge : this.edges) {
+		System.out.println("Edge '"+edge.getData()+"'");
+		System.out.println("    Head: Node '"+edge.getHead().getData()+"'");
+		System.out.println("    Tail: Node '"+edge.getTail().getData()+"'");
+	    }
+	} finally {
+	    unlockRead(stamp);
 	}
     }
 
     /** Performs consistency checks in the graph */
     public boolean check () {
-	boolean consistent = true;
-	// Loop over central edge list
-	for (int i = 0; i < this.edges.size(); i++) {
-	    Edge edge = this.getEdge(i);
-	    // check if head and tail links are null
-	    if ((edge.getHead() == null)||(edge.getTail() == null)) {
-		consistent = false;
-		System.out.println("Graph contains edge with null endpoint");
-	    }
-	    // check if head and tail link back to the edge 
-	    else if ((!edge.getHead().getEdgeList().contains(edge))||(!edge.getTail().getEdgeList().contains(edge))) {
-		consistent = false;
-		System.out.println("Graph contains edge with an endpoint that does not link back to it");
-	    }
-	    // check if central node list contains head and tail 
-	    else if ((!this.nodes.contains(edge.getHead()))||(!this.nodes.contains(edge.getTail()))) {
-		consistent = false;
-		System.out.println("Graph contains edge whose endpoint is not in central node list");
-	    }
-	} 
-	//Loop over central node list
-	for (int j = 0; j < this.nodes.size(); j++) {
-	    Node node = this.getNode(j);
-	    for (Edge e : node.getEdgeList()) {
-		// check if edge links are null
-		if (e == null) {
+	long stamp = readLock();
+	try {
+	    boolean consistent = true;
+	    // Loop over central edge list
+	    for (int i = 0; i < this.edges.size(); i++) {
+		Edge edge = this.getEdge(i);
+		// check if head and tail links are null
+		if ((edge.getHead() == null)||(edge.getTail() == null)) {
 		    consistent = false;
-		    System.out.println("Graph contains node with null edge link");
+		    System.out.println("Graph contains edge with null endpoint");
 		}
-		// check if edge has the node as either head or tail
-		else if ((!e.getHead().equals(node))&&(!e.getTail().equals(node))) {
+		// check if head and tail link back to the edge 
+		else if ((!edge.getHead().getEdgeList().contains(edge))||(!edge.getTail().getEdgeList().contains(edge))) {
 		    consistent = false;
-		    System.out.println("Graph contains node with an edge that does not link back to it");
+		    System.out.println("Graph contains edge with an endpoint that does not link back to it");
 		}
-		// check if edge is in the central edge list
-		else if (!this.edges.contains(e)) {
+		// check if central node list contains head and tail 
+		else if ((!this.nodes.contains(edge.getHead()))||(!this.nodes.contains(edge.getTail()))) {
 		    consistent = false;
-		    System.out.println("Graph contains node whose edge is not in the central edge list");
+		    System.out.println("Graph contains edge whose endpoint is not in central node list");
+		}
+	    } 
+	    //Loop over central node list
+	    for (int j = 0; j < this.nodes.size(); j++) {
+		Node node = this.getNode(j);
+		for (Edge e : node.getEdgeList()) {
+		    // check if edge links are null
+		    if (e == null) {
+			consistent = false;
+			System.out.println("Graph contains node with null edge link");
+		    }
+		    // check if edge has the node as either head or tail
+		    else if ((!e.getHead().equals(node))&&(!e.getTail().equals(node))) {
+			consistent = false;
+			System.out.println("Graph contains node with an edge that does not link back to it");
+		    }
+		    // check if edge is in the central edge list
+		    else if (!this.edges.contains(e)) {
+			consistent = false;
+			System.out.println("Graph contains node whose edge is not in the central edge list");
+		    }
 		}
 	    }
+	    if (consistent) {
+		System.out.println("Graph is consistent");
+	    }
+	    return consistent;
+	} finally {
+	    unlockRead(stamp);
 	}
-	if (consistent) {
-	    System.out.println("Graph is consistent");
-	}
-	return consistent;
     }
 
 
@@ -276,10 +1152,26 @@ public class Graph<V, E> extends Object {
 	/** List of the node's edges */
 	private ArrayList<Edge> edgeList;
 
+	/** Index from each neighbor to the edge connecting it to this node */
+	private HashMap<Node, Edge> adjacency;
+
+	/** Position of the node in the master node list, or -1 if not in one */
+	private int index;
+
 	/** Constructs a new node with data and an empty edge list */
 	Node (V data) {
 	    this.data = data;
 	    this.edgeList = new ArrayList<Edge>(); 
+	    this.adjacency = new HashMap<Node, Edge>();
+	    this.index = -1;
+	}
+
+	/** Constructs a new node with room for the given number of edges */
+	Node (V data, int degree) {
+	    this.data = data;
+	    this.edgeList = new ArrayList<Edge>(degree);
+	    this.adjacency = new HashMap<Node, Edge>(Math.max(16, 2*degree));
+	    this.index = -1;
 	}
 
 	/** Accessor for data */
@@ -289,61 +1181,121 @@ public class Graph<V, E> extends Object {
 
 	/** Manipulator for data */
 	public void setData (V data) {
-	    this.data = data;
+	    long stamp = writeLock();
+	    try {
+		this.data = data;
+		relocate(this);
+	    } finally {
+		unlockWrite(stamp);
+	    }
+	}
+
+	/** Accessor for master list index */
+	public int getIndex() {
+	    return this.index;
+	}
+
+	/** Manipulator for master list index */
+	void setIndex(int index) {
+	    this.index = index;
 	}
 
-	/** Accessor for edge list */
+	/** Accessor for edge list; a concurrent graph hands other threads a copy */
 	public ArrayList<Edge> getEdgeList() {
-	    return this.edgeList;
+	    if ((lock == null)||(writer == Thread.currentThread())) {
+		return this.edgeList;
+	    }
+	    long stamp = readLock();
+	    try {
+		return new ArrayList<Edge>(this.edgeList);
+	    } finally {
+		unlockRead(stamp);
+	    }
 	}
 
 	/** Returns list of all this node's neighbors */
 	public ArrayList<Node> getNeighbors () {
-	    ArrayList<Node> neighbors = new ArrayList<Node>();
-	    // Go through edge list and get the node on the other side of each edge
-	    for (Edge e : edgeList) {
-		if ((e.getHead().equals(this))&&(!neighbors.contains(e.getTail()))) {
-		    neighbors.add(e.getTail());
-		} else if ((e.getTail().equals(this))&&(!neighbors.contains(e.getHead()))) {
-		    neighbors.add(e.getHead());
+	    long stamp = readLock();
+	    try {
+		ArrayList<Node> neighbors = new ArrayList<Node>(this.adjacency.size());
+		// Go through edge list and get the node on the other side of each edge,
+		// once per neighbor (the indexed edge stands for any duplicates)
+		for (Edge e : edgeList) {
+		    Node other = e.opposite(this);
+		    if (this.adjacency.get(other) == e) {
+			neighbors.add(other);
+		    }
 		}
+		return neighbors;
+	    } finally {
+		unlockRead(stamp);
 	    }
-	    return neighbors;
 	}
 
 	/** Adds an edge to the edge list */
 	public void addEdge (Edge edge) {
+	    long stamp = writeLock();
+	    try {
+		link(edge);
+	    } finally {
+		unlockWrite(stamp);
+	    }
+	}
+
+	/** Adds an edge to the edge list, without locking */
+	private void link (Edge edge) {
+	    edge.setSlot(this, this.edgeList.size());
 	    this.edgeList.add(edge);
+	    this.adjacency.putIfAbsent(edge.opposite(this), edge);
 	}
 
 	/** Removes an edge from the edge list */
 	public void removeEdge (Edge edge) {
-	    this.edgeList.remove(edge);
+	    long stamp = writeLock();
+	    try {
+		int slot = edge.getSlot(this);
+		if ((slot >= 0)&&(slot < this.edgeList.size())&&(this.edgeList.get(slot) == edge)) {
+		    // Fill the hole with the last edge so removal is O(1)
+		    Edge last = this.edgeList.remove(this.edgeList.size()-1);
+		    if (last != edge) {
+			this.edgeList.set(slot, last);
+			last.setSlot(this, slot);
+		    }
+		} else {
+		    this.edgeList.remove(edge);
+		}
+		Node other = edge.opposite(this);
+		if (this.adjacency.get(other) == edge) {
+		    this.adjacency.remove(other);
+		}
+	    } finally {
+		unlockWrite(stamp);
+	    }
+	}
+
+	/** Drops all of the node's edges */
+	void clearEdges () {
+	    this.edgeList.clear();
+	    this.adjacency.clear();
 	}
 
 	/** Returns true if the given node is this node's neighbor */
 	public boolean isNeighbor (Node node) {
-	    boolean isneighbor = false;
-	    for (Edge edge : this.edgeList) {
-		if ((edge.getHead().equals(node))||(edge.getTail().equals(node))) {
-		    isneighbor = true;
-		}
+	    if (lock == null) {
+		return this.adjacency.containsKey(node);
 	    }
-	    return isneighbor;
+	    return optimisticRead(() -> this.adjacency.containsKey(node));
 	}
 
 	/** Returns the edge from this node to the given one, or null if none */
 	public Edge edgeTo (Node node) {
-	    Edge e = null;
-	    for (Edge edge : this.edgeList) {
-		if ((edge.getHead().equals(node))||(edge.getTail().equals(node))) {
-                    e = edge;
-                }
+	    if (lock == null) {
+		return this.adjacency.get(node);
 	    }
-	    return e;
+	    return optimisticRead(() -> this.adjacency.get(node));
 	}
 
-	/** "Visits" the node during traversal */
+	/** Prints the node; traversals no longer call this, pass a visitor instead */
 	public void visit() {
 	    System.out.println(this.getData());
 	}
@@ -362,11 +1314,51 @@ public class Graph<V, E> extends Object {
 	/** Edge's tail*/
 	private Node tail;
 
+	/** Weight computed from the data by the graph's weigher */
+	private double weight;
+
+	/** Position of the edge in the master edge list, or -1 if not in one */
+	private int index;
+
+	/** Position of the edge in its head's edge list */
+	private int headSlot;
+
+	/** Position of the edge in its tail's edge list */
+	private int tailSlot;
+
 	/** Constructs new edge with data, head, and tail */
 	Edge (E data, Node head, Node tail) {
 	    this.data = data;
+	    this.weight = weigher.applyAsDouble(data);
 	    this.head = head;
 	    this.tail = tail;
+	    this.index = -1;
+	    this.headSlot = -1;
+	    this.tailSlot = -1;
+	}
+
+	/** Accessor for master list index */
+	public int getIndex() {
+	    return this.index;
+	}
+
+	/** Manipulator for master list index */
+	void setIndex(int index) {
+	    this.index = index;
+	}
+
+	/** Returns the edge's position in an endpoint's edge list */
+	int getSlot(Node node) {
+	    return (node == this.head) ? this.headSlot : this.tailSlot;
+	}
+
+	/** Records the edge's position in an endpoint's edge list */
+	void setSlot(Node node, int slot) {
+	    if (node == this.head) {
+		this.headSlot = slot;
+	    } else {
+		this.tailSlot = slot;
+	    }
 	}
 
 	/** Accessor for edge data */
@@ -384,39 +1376,253 @@ public class Graph<V, E> extends Object {
 	    return this.tail;
 	}
 
-	/** Manipulator for edge data */
+	/** Returns the endpoint across the edge from the given node */
+	public Node opposite(Node node) {
+	    return (this.head == node) ? this.tail : this.head;
+	}
+
+	/** Returns the edge's weight */
+	public double getWeight() {
+	    return this.weight;
+	}
+
+	/** Manipulator for edge data, which also reweighs the edge */
 	public void setData(E data) {
-	    this.data = data;
+	    long stamp = writeLock();
+	    try {
+		this.data = data;
+		this.weight = weigher.applyAsDouble(data);
+		modCount++;
+		recordEdge(this);
+		if (edgeIndex(this) >= 0) {
+		    for (GraphListener<V, E> l : listeners) {
+			l.edgeChanged(this);
+		    }
+		}
+	    } finally {
+		unlockWrite(stamp);
+	    }
 	}
 
-	/** Manipulator for head */
+	/**
+	 * Manipulator for head.  An edge in the graph is moved from the old
+	 * head's edge list to the new one's (see moveEnd).
+	 */
 	public void setHead(Node head) {
-	    this.head = head;
+	    long stamp = writeLock();
+	    try {
+		if (head != this.head) {
+		    moveEnd(this.head, head);
+		}
+	    } finally {
+		unlockWrite(stamp);
+	    }
 	}
 
-	/** Manipulator for tail */
+	/** Manipulator for tail, which relinks the edge like setHead */
 	public void setTail(Node tail) {
-	    this.tail = tail;
+	    long stamp = writeLock();
+	    try {
+		if (tail != this.tail) {
+		    moveEnd(this.tail, tail);
+		}
+	    } finally {
+		unlockWrite(stamp);
+	    }
+	}
+
+	/**
+	 * Moves one end of the edge from one node to another.  If the edge
+	 * is in the graph it is unlinked from the old node and linked to the
+	 * new one, the other end's adjacency is updated to match, and
+	 * listeners see it removed and then added again.  Throws
+	 * IllegalArgumentException if the move would join a node to itself
+	 * or to a neighbor it already has an edge to, or would link the edge
+	 * to a node outside the graph.
+	 */
+	private void moveEnd (Node from, Node to) {
+	    Node other = opposite(from);
+	    if (to == other) {
+		throw new IllegalArgumentException("An edge can't join a node to itself");
+	    }
+	    if (other.adjacency.containsKey(to)) {
+		throw new IllegalArgumentException("Nodes are already connected");
+	    }
+	    boolean linked = (edgeIndex(this) >= 0);
+	    if ((linked)&&(nodeIndex(to) < 0)) {
+		throw new IllegalArgumentException("Node is not in the graph");
+	    }
+	    if (linked) {
+		for (GraphListener<V, E> l : listeners) {
+		    l.edgeRemoved(this);
+		}
+		// Unlink while getSlot still tells the two ends apart
+		from.removeEdge(this);
+		if (other.adjacency.get(from) == this) {
+		    other.adjacency.remove(from);
+		}
+	    }
+	    if (from == this.head) {
+		this.head = to;
+		this.headSlot = -1;
+	    } else {
+		this.tail = to;
+		this.tailSlot = -1;
+	    }
+	    modCount++;
+	    recordEdge(this);
+	    if (linked) {
+		to.link(this);
+		other.adjacency.putIfAbsent(to, this);
+		for (GraphListener<V, E> l : listeners) {
+		    l.edgeAdded(this);
+		}
+	    }
 	}
 
 	/** Returns true if two edges are equal (same endpoints) */
 	public boolean equals(Object o) {
 	    boolean equal = false;
-	    if (getClass() == o.getClass()) {
-                @SuppressWarnings("unchecked")
-                    Edge e = (Edge)o;
+	    if ((o != null)&&(getClass() == o.getClass())) {
+		@SuppressWarnings("unchecked")
+		    Edge e = (Edge)o;
 		if (((this.head.equals(e.getHead()))&&(this.tail.equals(e.getTail())))||((this.head.equals(e.getTail()))&&(this.tail.equals(e.getHead())))) {
 		    equal = true;
 		}
-            }
+	    }
 	    return equal;
 	}
 
-	/** Updated hashcode method to match updated equals */
+	/** Hashcode matching equals: symmetric in the endpoints, well mixed */
 	public int hashCode () {
-	    return(this.head.hashCode()*this.tail.hashCode());
+	    int h1 = this.head.hashCode();
+	    int h2 = this.tail.hashCode();
+	    // Order the endpoint hashes so (a,b) and (b,a) agree
+	    int h = 31*Math.min(h1, h2)+Math.max(h1, h2);
+	    h *= 0x9E3779B9;
+	    return h^(h >>> 16);
+	}
+
+    }
+
+    /**
+     * Breadth-first traversal over a compact view that advances one
+     * node per call to next()
+     */
+    private class BreadthFirstWalk implements Iterator<Node> {
+	/** View being walked */
+	private CompactGraph<V, E> c;
+
+	/** Queue of reached ids, filled in visiting order */
+	private int[] queue;
+
+	/** Next queue entry to hand out, and end of the queue */
+	private int head, tail;
+
+	/** Seen bits, 64 nodes per word */
+	private long[] seenIds;
+
+	/** Starts a walk from the given id */
+	BreadthFirstWalk (CompactGraph<V, E> c, int start) {
+	    this.c = c;
+	    this.queue = new int[c.numNodes()];
+	    this.seenIds = new long[(c.numNodes()+63) >>> 6];
+	    this.seenIds[start >>> 6] |= 1L << (start & 63);
+	    this.queue[this.tail++] = start;
+	}
+
+	/** Returns true if there are nodes left */
+	public boolean hasNext() {
+	    return this.head < this.tail;
+	}
+
+	/** Returns the next node, queueing its unseen neighbors */
+	public Node next() {
+	    if (this.head == this.tail) {
+		throw new NoSuchElementException();
+	    }
+	    int u = this.queue[this.head++];
+	    for (int a = this.c.firstArc(u); a < this.c.endArc(u); a++) {
+		int v = this.c.target(a);
+		if ((this.seenIds[v >>> 6] & (1L << (v & 63))) == 0) {
+		    this.seenIds[v >>> 6] |= 1L << (v & 63);
+		    this.queue[this.tail++] = v;
+		}
+	    }
+	    return this.c.getNode(u);
+	}
+    }
+
+    /**
+     * Depth-first traversal over a compact view, skipping and marking
+     * nodes in a seen bitset.  Hands out nodes in the order a recursive
+     * traversal would visit them, but keeps the path on an explicit
+     * stack of (node, next arc) so long paths can't overflow the call
+     * stack.
+     */
+    private class DepthFirstWalk implements Iterator<Node> {
+	/** View being walked */
+	private CompactGraph<V, E> c;
+
+	/** Seen bits, 64 nodes per word */
+	private long[] seenIds;
+
+	/** Nodes on the current path, and the next arc to try from each */
+	private int[] stackNode, stackArc;
+
+	/** Length of the current path */
+	private int depth;
+
+	/** Id to hand out next, or -1 when the walk is over */
+	private int pending;
+
+	/** Starts a walk from the given id */
+	DepthFirstWalk (CompactGraph<V, E> c, int start, long[] seenIds) {
+	    this.c = c;
+	    this.seenIds = seenIds;
+	    this.pending = -1;
+	    if ((seenIds[start >>> 6] & (1L << (start & 63))) == 0) {
+		this.stackNode = new int[c.numNodes()];
+		this.stackArc = new int[c.numNodes()];
+		push(start);
+	    }
+	}
+
+	/** Returns true if there are nodes left */
+	public boolean hasNext() {
+	    return this.pending >= 0;
 	}
 
+	/** Returns the next node, then walks on to find the one after */
+	public Node next() {
+	    if (this.pending < 0) {
+		throw new NoSuchElementException();
+	    }
+	    Node node = this.c.getNode(this.pending);
+	    this.pending = -1;
+	    while ((this.pending < 0)&&(this.depth > 0)) {
+		int top = this.depth-1;
+		int u = this.stackNode[top];
+		if (this.stackArc[top] == this.c.endArc(u)) {
+		    this.depth--;
+		    continue;
+		}
+		int v = this.c.target(this.stackArc[top]++);
+		if ((this.seenIds[v >>> 6] & (1L << (v & 63))) == 0) {
+		    push(v);
+		}
+	    }
+	    return node;
+	}
+
+	/** Marks a node seen and makes it the end of the path */
+	private void push(int v) {
+	    this.seenIds[v >>> 6] |= 1L << (v & 63);
+	    this.stackNode[this.depth] = v;
+	    this.stackArc[this.depth] = this.c.firstArc(v);
+	    this.depth++;
+	    this.pending = v;
+	}
     }
 
 }//end of Graph class
\ No newline at end of file
@@ -0,0 +1,130 @@
+import java.util.*;
+import java.util.stream.*;
+
+/**
+ * Collects nodes and edges for adding to a graph all at once.  Nodes
+ * are numbered in the order they are added, from 0, and edges refer to
+ * them by number.  Adding the batch sizes the graph's storage once,
+ * drops self-loops and repeated edges in one hashing pass, and fills
+ * the edge lists in one sweep, optionally in parallel; see
+ * Graph.addBatch().
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class GraphBuilder<V,E> {
+
+    /** Node data, by node number */
+    private ArrayList<V> nodeData;
+
+    /** Edge data, by edge number */
+    private ArrayList<E> edgeData;
+
+    /** Edge heads, as node numbers */
+    private int[] heads;
+
+    /** Edge tails, as node numbers */
+    private int[] tails;
+
+    /** True to fill edge lists on the common pool */
+    private boolean parallel;
+
+    /** Constructs an empty builder with room for the given numbers of nodes and edges */
+    GraphBuilder (int nodeCapacity, int edgeCapacity) {
+	this.nodeData = new ArrayList<V>(nodeCapacity);
+	this.edgeData = new ArrayList<E>(edgeCapacity);
+	this.heads = new int[Math.max(edgeCapacity, 4)];
+	this.tails = new int[this.heads.length];
+    }
+
+    /** Returns an empty builder */
+    public static <V,E> GraphBuilder<V,E> create() {
+	return new GraphBuilder<V,E>(16, 16);
+    }
+
+    /** Returns an empty builder with room for the given numbers of nodes and edges */
+    public static <V,E> GraphBuilder<V,E> withCapacity(int nodeCapacity, int edgeCapacity) {
+	return new GraphBuilder<V,E>(nodeCapacity, edgeCapacity);
+    }
+
+    /** Sets whether edge lists are filled in parallel */
+    public GraphBuilder<V,E> setParallel(boolean parallel) {
+	this.parallel = parallel;
+	return this;
+    }
+
+    /** Returns number of nodes */
+    public int numNodes() {
+	return this.nodeData.size();
+    }
+
+    /** Returns number of edges, before duplicates are dropped */
+    public int numEdges() {
+	return this.edgeData.size();
+    }
+
+    /** Adds a node and returns its number */
+    public int addNode(V data) {
+	this.nodeData.add(data);
+	return this.nodeData.size()-1;
+    }
+
+    /** Adds nodes in order, numbered on from the nodes already added */
+    public void addNodes(Collection<? extends V> data) {
+	this.nodeData.addAll(data);
+    }
+
+    /** Adds nodes in stream order, numbered on from the nodes already added */
+    public void addNodes(Stream<? extends V> data) {
+	data.forEachOrdered(this.nodeData::add);
+    }
+
+    /** Adds an edge between two node numbers */
+    public void addEdge(E data, int head, int tail) {
+	if ((head < 0)||(tail < 0)||(head >= this.nodeData.size())||(tail >= this.nodeData.size())) {
+	    throw new IllegalArgumentException("No node numbered "+((head < 0)||(head >= this.nodeData.size()) ? head : tail));
+	}
+	int j = this.edgeData.size();
+	if (j == this.heads.length) {
+	    int size = (int)Math.min(Integer.MAX_VALUE-8, j+(long)(j >> 1));
+	    this.heads = Arrays.copyOf(this.heads, size);
+	    this.tails = Arrays.copyOf(this.tails, size);
+	}
+	this.heads[j] = head;
+	this.tails[j] = tail;
+	this.edgeData.add(data);
+    }
+
+    /** Adds edges given by parallel arrays of heads, tails, and data */
+    public void addEdges(int[] heads, int[] tails, List<? extends E> data) {
+	if ((heads.length != tails.length)||(heads.length != data.size())) {
+	    throw new IllegalArgumentException("Edge arrays differ in length");
+	}
+	int needed = this.edgeData.size()+heads.length;
+	if (needed > this.heads.length) {
+	    this.heads = Arrays.copyOf(this.heads, needed);
+	    this.tails = Arrays.copyOf(this.tails, needed);
+	}
+	this.edgeData.ensureCapacity(needed);
+	for (int k = 0; k < heads.length; k++) {
+	    addEdge(data.get(k), heads[k], tails[k]);
+	}
+    }
+
+    /** Builds a new graph holding the nodes and edges */
+    public Graph<V,E> build() {
+	Graph<V,E> graph = new Graph<V,E>();
+	addTo(graph);
+	return graph;
+    }
+
+    /**
+     * Adds the nodes and edges to a graph, after any nodes it already
+     * has.  Edges that are self-loops or repeat an earlier edge's ends
+     * are skipped, as Graph.addEdge does.
+     */
+    public void addTo(Graph<V,E> graph) {
+	graph.addBatch(this.nodeData, this.edgeData, this.heads, this.tails, this.parallel);
+    }
+}
@@ -1,5 +1,6 @@
 import java.util.*;
 import java.awt.*;
+import java.awt.image.*;
 import javax.swing.*;        
 
 /**
@@ -43,9 +44,59 @@ class GraphCanvas extends JComponent {
     /** Boolean to determine whether to highlight Dijkstra path */
     boolean highlightPath;
 
+    /** Cached image of the graph itself, without any highlighting */
+    private BufferedImage graphLayer;
+
+    /** Graph the cached layer was drawn from */
+    private Graph<DisplayNodeData<String>, Double> layerGraph;
+
+    /** Graph modification count when the cached layer was drawn */
+    private int layerModCount;
+
+    /** Edges indexed by location, kept up to date by the tracker */
+    private SegmentIndex<Graph<DisplayNodeData<String>, Double>.Edge> edgeIndex;
+
+    /** Graph the edge index covers */
+    private Graph<DisplayNodeData<String>, Double> indexedGraph;
+
+    /** Listener that keeps the edge index up to date */
+    private EdgeTracker tracker;
+
+    /** Zoom: screen pixels per map unit */
+    private double scale;
+
+    /** Map coordinates shown at the top left corner of the canvas */
+    private double originX, originY;
+
+    /** Count of changes to the view (zoom or pan) */
+    private int viewCount;
+
+    /** View count when the cached layer was drawn */
+    private int layerViewCount;
+
+    /** Zoom limits */
+    static final double MIN_ZOOM = 0.005, MAX_ZOOM = 16.0;
+
+    /** Zoom below which node labels are hidden */
+    static final double LABEL_ZOOM = 0.6;
+
+    /** Zoom below which edge weights are hidden */
+    static final double WEIGHT_ZOOM = 0.9;
+
+    /** Zoom below which crowded nodes are merged into one glyph */
+    static final double CLUSTER_ZOOM = 0.35;
+
+    /** Size in pixels of the screen cells nodes are merged by */
+    static final int CLUSTER_CELL = 12;
+
+    /** Extra screen margin searched for nodes whose labels reach into view */
+    static final int NODE_MARGIN = 64;
+
     /** Constructor */
     public GraphCanvas() {
 	graph = new Graph<DisplayNodeData<String>, Double>();
+	// Index node locations so hit-testing doesn't scan every node
+	graph.indexLocations(DisplayNodeData::getPoint);
 	mousePoint = null;
 	startNode = null;
 	drawLine = false;
@@ -55,69 +106,406 @@ class GraphCanvas extends JComponent {
 	longHighlightNode = null;
 	dijkstraNodes = new HashSet<Graph<DisplayNodeData<String>, Double>.Node>();
 	dijkstraEdges = new HashSet<Graph<DisplayNodeData<String>, Double>.Edge>();
+	scale = 1.0;
+	originX = 0.0;
+	originY = 0.0;
     }
 
     /** Recursive */
 
     /**
-     *  Paints a red circle ten pixels in diameter at each node.
-     *  Paints a line between points for each edge.
+     *  Paints the cached graph layer, then the highlighting on top.
+     *  Only geometry inside the clip bounds is drawn, so repainting a
+     *  small dirty rectangle costs little however large the graph is.
      *
      *  @param g The graphics object to draw with
      */
     public void paintComponent(Graphics g) {
+	Rectangle clip = g.getClipBounds();
+	if (clip == null) {
+	    clip = new Rectangle(0, 0, getWidth(), getHeight());
+	}
+	// Static graph, redrawn into the cache only after the graph or view changes
+	BufferedImage layer = graphLayer();
+	if (layer != null) {
+	    g.drawImage(layer, 0, 0, null);
+	}
+	// Overlay: path, highlights and the animated line
+	paintOverlay(g, clip);
+        super.paintComponent(g);
+    }
+
+    /** Returns the current zoom factor (screen pixels per map unit) */
+    public double getZoom() {
+	return scale;
+    }
+
+    /** Converts a point on screen to map coordinates */
+    public Point toWorld(Point screen) {
+	return new Point((int)Math.round(originX+screen.getX()/scale), (int)Math.round(originY+screen.getY()/scale));
+    }
+
+    /** Converts a map x coordinate to a screen x coordinate */
+    int screenX(double x) {
+	return (int)Math.round((x-originX)*scale);
+    }
+
+    /** Converts a map y coordinate to a screen y coordinate */
+    int screenY(double y) {
+	return (int)Math.round((y-originY)*scale);
+    }
+
+    /** Zooms by a factor, keeping the map point under the anchor (on screen) still */
+    public void zoom(double factor, Point anchor) {
+	double newScale = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, scale*factor));
+	double ax = originX+anchor.getX()/scale;
+	double ay = originY+anchor.getY()/scale;
+	originX = ax-anchor.getX()/newScale;
+	originY = ay-anchor.getY()/newScale;
+	scale = newScale;
+	viewCount++;
+	repaint();
+    }
+
+    /** Moves the view by the given number of screen pixels */
+    public void pan(int dx, int dy) {
+	originX -= dx/scale;
+	originY -= dy/scale;
+	viewCount++;
+	repaint();
+    }
+
+    /** Returns the cached graph layer, redrawing it if it is stale */
+    private BufferedImage graphLayer() {
+	int w = getWidth();
+	int h = getHeight();
+	if ((w <= 0)||(h <= 0)) {
+	    return null;
+	}
+	if ((graphLayer == null)||(graphLayer.getWidth() != w)||(graphLayer.getHeight() != h)||(layerGraph != graph)||(layerModCount != graph.getModCount())||(layerViewCount != viewCount)) {
+	    if ((graphLayer == null)||(graphLayer.getWidth() != w)||(graphLayer.getHeight() != h)) {
+		graphLayer = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+	    }
+	    Graphics2D lg = graphLayer.createGraphics();
+	    // Clear to transparent, then draw
+	    lg.setComposite(AlphaComposite.Clear);
+	    lg.fillRect(0, 0, w, h);
+	    lg.setComposite(AlphaComposite.SrcOver);
+	    lg.setFont(getFont());
+	    paintGraph(lg, new Rectangle(0, 0, w, h));
+	    lg.dispose();
+	    layerGraph = graph;
+	    layerModCount = graph.getModCount();
+	    layerViewCount = viewCount;
+	}
+	return graphLayer;
+    }
+
+    /**
+     *  Paints a red circle at each visible node, and a line between
+     *  points for each visible edge.  Nodes come from a range query on
+     *  the graph's spatial index and edges from one on the canvas's
+     *  edge index, so the work depends on what is on screen rather than
+     *  on the size of the graph.  How much detail is drawn depends
+     *  on the zoom: labels and weights disappear when zoomed out, and
+     *  far enough out nodes that crowd together merge into one glyph.
+     *
+     *  @param g The graphics object to draw with
+     *  @param bounds The area of the screen to draw
+     */
+    private void paintGraph(Graphics g, Rectangle bounds) {
 	// Draw the nodes and node data
-	for (int i = 0; i < graph.numNodes(); i++) {
-	    Graph<DisplayNodeData<String>, Double>.Node node = graph.getNode(i);
-	    DisplayNodeData<String> dispData = (DisplayNodeData<String>)node.getData(); 
-	    int x = (int)dispData.getPoint().getX()-10;
-	    int y = (int)dispData.getPoint().getY()-10;
-	    // Highlight node if necessary
-	    if ((highlight)&&(highlightNode.equals(node))) {
-		g.setColor(Color.BLUE);
-		g.fillOval((x-2),(y-2),24,24);
+	Rectangle area = worldArea(bounds, NODE_MARGIN);
+	ArrayList<Graph<DisplayNodeData<String>, Double>.Node> visible = graph.nodesInRectangle(area);
+	boolean clustered = (scale < CLUSTER_ZOOM);
+	if (clustered) {
+	    paintClusters(g, visible);
+	} else {
+	    for (Graph<DisplayNodeData<String>, Double>.Node node : visible) {
+		if (bounds.intersects(nodeBounds(node))) {
+		    paintNode(g, node, Color.RED);
+		}
 	    }
-	    // Semi permanently highlight node if necessary
-	    if ((longHighlight)&&(longHighlightNode.equals(node))) {
-                g.setColor(Color.BLUE);
-                g.fillOval((x-2),(y-2),24,24);
-            }
-	    if ((highlightPath)&&(dijkstraNodes.contains(node))) {
-		g.setColor(Color.CYAN);
-	    } else {
+	}
+	// Draw the edges
+	Rectangle view = worldArea(bounds, 0);
+	HashMap<Long, HashSet<Long>> drawnCells = clustered ? new HashMap<Long, HashSet<Long>>() : null;
+	for (Graph<DisplayNodeData<String>, Double>.Edge edge : edgeIndex().inRectangle(view)) {
+	    paintEdge(g, edge, Color.BLACK, bounds, drawnCells);
+	}
+    }
+
+    /** Returns the edge index for the graph, building it if the graph has been swapped */
+    private SegmentIndex<Graph<DisplayNodeData<String>, Double>.Edge> edgeIndex() {
+	if (indexedGraph != graph) {
+	    if (indexedGraph != null) {
+		indexedGraph.removeListener(tracker);
+	    }
+	    edgeIndex = new SegmentIndex<Graph<DisplayNodeData<String>, Double>.Edge>(32);
+	    tracker = new EdgeTracker();
+	    indexedGraph = graph;
+	    for (int i = 0; i < graph.numEdges(); i++) {
+		tracker.edgeAdded(graph.getEdge(i));
+	    }
+	    graph.addListener(tracker);
+	}
+	return edgeIndex;
+    }
+
+    /** Keeps the edge index in step with the graph */
+    private class EdgeTracker implements GraphListener<DisplayNodeData<String>, Double> {
+	/** Nodes have no effect until edges join them */
+	public void nodeAdded(Graph<DisplayNodeData<String>, Double>.Node node) {
+	}
+
+	/** A node's edges are removed before it is */
+	public void nodeRemoved(Graph<DisplayNodeData<String>, Double>.Node node) {
+	}
+
+	/** Moves the node's edges with it */
+	public void nodeChanged(Graph<DisplayNodeData<String>, Double>.Node node) {
+	    for (Graph<DisplayNodeData<String>, Double>.Edge edge : node.getEdgeList()) {
+		edgeAdded(edge);
+	    }
+	}
+
+	/** Indexes an edge between its endpoints */
+	public void edgeAdded(Graph<DisplayNodeData<String>, Double>.Edge edge) {
+	    edgeIndex.insert(edge, edge.getHead().getData().getPoint(), edge.getTail().getData().getPoint());
+	}
+
+	/** Drops an edge from the index */
+	public void edgeRemoved(Graph<DisplayNodeData<String>, Double>.Edge edge) {
+	    edgeIndex.remove(edge);
+	}
+
+	/** Changes to edge data don't move the edge */
+	public void edgeChanged(Graph<DisplayNodeData<String>, Double>.Edge edge) {
+	}
+
+	/** Empties the index */
+	public void cleared() {
+	    edgeIndex.clear();
+	}
+    }
+
+    /** Paints nodes binned into screen cells, one glyph per crowded cell */
+    private void paintClusters(Graphics g, ArrayList<Graph<DisplayNodeData<String>, Double>.Node> visible) {
+	// Count, and total screen position, of the nodes in each cell
+	HashMap<Long, int[]> cells = new HashMap<Long, int[]>();
+	for (Graph<DisplayNodeData<String>, Double>.Node node : visible) {
+	    Point p = node.getData().getPoint();
+	    int sx = screenX(p.x);
+	    int sy = screenY(p.y);
+	    long key = cellKey(sx, sy);
+	    int[] cell = cells.get(key);
+	    if (cell == null) {
+		cell = new int[3];
+		cells.put(key, cell);
+	    }
+	    cell[0]++;
+	    cell[1] += sx;
+	    cell[2] += sy;
+	}
+	int d = nodeSize();
+	for (int[] cell : cells.values()) {
+	    int x = cell[1]/cell[0];
+	    int y = cell[2]/cell[0];
+	    if (cell[0] == 1) {
 		g.setColor(Color.RED);
+		g.fillOval(x-d/2, y-d/2, d, d);
+	    } else {
+		// Aggregate glyph, growing slowly with the number of nodes
+		int size = Math.min(CLUSTER_CELL, d+2*(int)Math.ceil(Math.log(cell[0])/Math.log(2)));
+		g.setColor(Color.RED.darker());
+		g.fillOval(x-size/2, y-size/2, size, size);
 	    }
-	    g.fillOval(x,y,20,20);
-	    // Draw node's data(label)
-	    g.setColor(Color.BLACK);
-	    g.drawString(node.getData().getData(), x, y);
 	}
-	// Draw the edges
-	for (int i = 0; i < graph.numEdges(); i++) {
-	    Graph<DisplayNodeData<String>, Double>.Edge edge = graph.getEdge(i);
-	    DisplayNodeData<String> headData = (DisplayNodeData<String>)edge.getHead().getData();
-	    DisplayNodeData<String> tailData = (DisplayNodeData<String>)edge.getTail().getData();
-	    int x1 = (int)headData.getPoint().getX();
-	    int y1 = (int)headData.getPoint().getY();
-	    int x2 = (int)tailData.getPoint().getX();
-	    int y2 = (int)tailData.getPoint().getY();
-	    if ((highlightPath)&&(dijkstraEdges.contains(edge))) {
-		g.setColor(Color.CYAN);
-            } else {
-		g.setColor(Color.BLACK);
+    }
+
+    /** Paints the highlighting that sits on top of the graph layer */
+    private void paintOverlay(Graphics g, Rectangle clip) {
+	// Draw the Dijkstra path over the plain graph
+	if (highlightPath) {
+	    for (Graph<DisplayNodeData<String>, Double>.Edge edge : dijkstraEdges) {
+		if (edge != null) {
+		    paintEdge(g, edge, Color.CYAN, clip, null);
+		}
 	    }
-	    g.drawLine(x1, y1, x2, y2);
-	    // Draw edge's data(distance)
-	    g.setColor(Color.BLACK);
-	    g.drawString(edge.getData().toString(), ((x1+x2)/2), ((y1+y2)/2));
+	    for (Graph<DisplayNodeData<String>, Double>.Node node : dijkstraNodes) {
+		if (clip.intersects(nodeBounds(node))) {
+		    paintNode(g, node, Color.CYAN);
+		}
+	    }
+	}
+	// Highlight node if necessary
+	if ((highlight)&&(isShown(highlightNode))&&(clip.intersects(nodeBounds(highlightNode)))) {
+	    paintHighlightedNode(g, highlightNode);
+	}
+	// Semi permanently highlight node if necessary
+	if ((longHighlight)&&(isShown(longHighlightNode))&&(clip.intersects(nodeBounds(longHighlightNode)))) {
+	    paintHighlightedNode(g, longHighlightNode);
 	}
 	// Draw line if drawLine is true
 	if (drawLine) {
-	    int x = (int)startNode.getData().getPoint().getX();
-	    int y = (int)startNode.getData().getPoint().getY();
+	    int x = screenX(startNode.getData().getPoint().getX());
+	    int y = screenY(startNode.getData().getPoint().getY());
+	    g.setColor(Color.BLACK);
 	    g.drawLine(x, y, (int)mousePoint.getX(), (int)mousePoint.getY());
 	}
-        super.paintComponent(g);
+    }
+
+    /** Returns true if the node is still part of the displayed graph */
+    private boolean isShown(Graph<DisplayNodeData<String>, Double>.Node node) {
+	return (node != null)&&(graph.getNodeIndex(node) >= 0);
+    }
+
+    /** Paints a node with a blue ring around it */
+    private void paintHighlightedNode(Graphics g, Graph<DisplayNodeData<String>, Double>.Node node) {
+	int d = nodeSize();
+	int x = screenX(node.getData().getPoint().getX())-d/2;
+	int y = screenY(node.getData().getPoint().getY())-d/2;
+	g.setColor(Color.BLUE);
+	g.fillOval((x-2),(y-2),d+4,d+4);
+	if ((highlightPath)&&(dijkstraNodes.contains(node))) {
+	    paintNode(g, node, Color.CYAN);
+	} else {
+	    paintNode(g, node, Color.RED);
+	}
+    }
+
+    /** Paints a node's circle in the given color, and its label if zoomed in enough */
+    private void paintNode(Graphics g, Graph<DisplayNodeData<String>, Double>.Node node, Color color) {
+	int d = nodeSize();
+	int x = screenX(node.getData().getPoint().getX())-d/2;
+	int y = screenY(node.getData().getPoint().getY())-d/2;
+	g.setColor(color);
+	g.fillOval(x,y,d,d);
+	// Draw node's data(label)
+	if (scale >= LABEL_ZOOM) {
+	    g.setColor(Color.BLACK);
+	    g.drawString(node.getData().getData(), x, y);
+	}
+    }
+
+    /**
+     *  Paints an edge's line in the given color, and its label, if it
+     *  crosses the bounds.  Lines shorter than a pixel are skipped.  When
+     *  drawnCells is given, only one line is drawn between any two
+     *  cluster cells and lines inside a cell are skipped; it maps the
+     *  lower cell key of each pair drawn to the higher ones.
+     */
+    private void paintEdge(Graphics g, Graph<DisplayNodeData<String>, Double>.Edge edge, Color color, Rectangle bounds, HashMap<Long, HashSet<Long>> drawnCells) {
+	DisplayNodeData<String> headData = edge.getHead().getData();
+	DisplayNodeData<String> tailData = edge.getTail().getData();
+	int x1 = screenX(headData.getPoint().getX());
+	int y1 = screenY(headData.getPoint().getY());
+	int x2 = screenX(tailData.getPoint().getX());
+	int y2 = screenY(tailData.getPoint().getY());
+	if ((Math.abs(x2-x1) < 1)&&(Math.abs(y2-y1) < 1)) {
+	    return;
+	}
+	if (drawnCells != null) {
+	    long c1 = cellKey(x1, y1);
+	    long c2 = cellKey(x2, y2);
+	    if ((c1 == c2)||(!drawnCells.computeIfAbsent(Math.min(c1, c2), k -> new HashSet<Long>()).add(Math.max(c1, c2)))) {
+		return;
+	    }
+	}
+	if (bounds.intersectsLine(x1, y1, x2, y2)) {
+	    g.setColor(color);
+	    g.drawLine(x1, y1, x2, y2);
+	}
+	// Draw edge's data(distance)
+	if (scale >= WEIGHT_ZOOM) {
+	    String label = edge.getData().toString();
+	    int lx = (x1+x2)/2;
+	    int ly = (y1+y2)/2;
+	    if (bounds.intersects(labelBounds(label, lx, ly))) {
+		g.setColor(Color.BLACK);
+		g.drawString(label, lx, ly);
+	    }
+	}
+    }
+
+    /** Returns the diameter nodes are drawn at for the current zoom */
+    private int nodeSize() {
+	return (int)Math.round(Math.max(4, Math.min(20, 20*scale)));
+    }
+
+    /** Returns the cluster cell a screen position falls in, packed into a long */
+    private static long cellKey(int sx, int sy) {
+	return (((long)Math.floorDiv(sx, CLUSTER_CELL)) << 32)|(Math.floorDiv(sy, CLUSTER_CELL) & 0xffffffffL);
+    }
+
+    /** Returns the map area shown in a screen rectangle grown by a margin (in pixels) */
+    private Rectangle worldArea(Rectangle screen, int margin) {
+	Point p = toWorld(new Point(screen.x-margin, screen.y-margin));
+	Point q = toWorld(new Point(screen.x+screen.width+margin, screen.y+screen.height+margin));
+	return new Rectangle(p.x-1, p.y-1, q.x-p.x+2, q.y-p.y+2);
+    }
+
+    /** Returns the screen area covered by a node, its highlight ring and its label */
+    Rectangle nodeBounds(Graph<DisplayNodeData<String>, Double>.Node node) {
+	int d = nodeSize();
+	int x = screenX(node.getData().getPoint().getX());
+	int y = screenY(node.getData().getPoint().getY());
+	Rectangle r = new Rectangle(x-d/2-2, y-d/2-2, d+4, d+4);
+	if (scale >= LABEL_ZOOM) {
+	    r.add(labelBounds(node.getData().getData(), x-d/2, y-d/2));
+	}
+	return r;
+    }
+
+    /** Returns the area covered by a string drawn at the given baseline point */
+    private Rectangle labelBounds(String label, int x, int y) {
+	Font font = getFont();
+	if (font == null) {
+	    // Not displayable yet: assume a generous size
+	    return new Rectangle(x, y-16, 8*label.length()+1, 20);
+	}
+	FontMetrics fm = getFontMetrics(font);
+	return new Rectangle(x, y-fm.getAscent(), fm.stringWidth(label)+1, fm.getAscent()+fm.getDescent());
+    }
+
+    /** Returns the area covered by the animated line */
+    private Rectangle lineBounds() {
+	Point p = startNode.getData().getPoint();
+	Rectangle r = new Rectangle(screenX(p.x), screenY(p.y), 0, 0);
+	r.add(mousePoint);
+	r.grow(1, 1);
+	return r;
+    }
+
+    /**
+     *  Changes the hover-highlighted node (null for none), repainting
+     *  only the old and new nodes' areas, and only if anything changed.
+     */
+    public void hover(Graph<DisplayNodeData<String>, Double>.Node node) {
+	if (((node == null)&&(!highlight))||((node != null)&&(highlight)&&(node == highlightNode))) {
+	    return;
+	}
+	Rectangle dirty = null;
+	if ((highlight)&&(highlightNode != null)) {
+	    dirty = nodeBounds(highlightNode);
+	}
+	highlightNode = node;
+	highlight = (node != null);
+	if (node != null) {
+	    Rectangle r = nodeBounds(node);
+	    dirty = (dirty == null) ? r : dirty.union(r);
+	}
+	repaint(dirty);
+    }
+
+    /** Draws the animated line from a node to a point, repainting only around the line */
+    public void showLine(Graph<DisplayNodeData<String>, Double>.Node start, Point point) {
+	Rectangle dirty = drawLine ? lineBounds() : null;
+	startNode = start;
+	mousePoint = point;
+	drawLine = true;
+	Rectangle r = lineBounds();
+	repaint((dirty == null) ? r : dirty.union(r));
     }
 
     /**
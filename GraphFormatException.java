@@ -0,0 +1,33 @@
+import java.io.*;
+
+/**
+ * Exception for a graph file that can't be read, with the line it
+ * went wrong on (or 0 if it isn't tied to a line)
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class GraphFormatException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Line number of the problem, or 0 if none */
+    private long line;
+
+    /** Constructs an exception for a problem on the given line */
+    GraphFormatException(String message, long line) {
+	super((line > 0) ? ("line "+line+": "+message) : message);
+	this.line = line;
+    }
+
+    /** Constructs an exception not tied to a line */
+    GraphFormatException(String message) {
+	this(message, 0);
+    }
+
+    /** Accessor for line number */
+    public long getLine() {
+	return this.line;
+    }
+}
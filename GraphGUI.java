@@ -33,6 +33,27 @@ public class GraphGUI {
     /** Remembers current open graph file */
     String openFile;
 
+    /** Remembers where the last pan drag event occurred, or null if not panning */
+    Point panFrom;
+
+    /** Straight-line heuristic steering direction searches toward their target */
+    EuclideanHeuristic<DisplayNodeData<String>, Double> heuristic;
+
+    /** Shortest path trees from recent start nodes */
+    ShortestPathCache<DisplayNodeData<String>, Double> pathCache;
+
+    /** Route index for the open graph file, or null if there isn't one (yet) */
+    ContractionHierarchy<DisplayNodeData<String>, Double> hierarchy;
+
+    /** Autosave journal of edits, or null if autosave is off */
+    EditJournal journal;
+
+    /** Journal edit count when the graph was last saved or opened */
+    long savedEditCount;
+
+    /** Milliseconds between checks for a due autosave checkpoint */
+    private static final int CHECKPOINT_DELAY = 30000;
+
     /**
      *  Schedules a job for the event-dispatching thread
      *  creating and showing this application's GUI.
@@ -58,6 +79,14 @@ public class GraphGUI {
         // Add components
         createComponents(frame);
 
+        // Recover unsaved work, then journal edits until the window closes
+        startJournal();
+        frame.addWindowListener(new WindowAdapter() {
+                public void windowClosing(WindowEvent e) {
+                    stopJournal();
+                }
+            });
+
         // Display the window.
         frame.pack();
         frame.setVisible(true);
@@ -71,12 +100,15 @@ public class GraphGUI {
         JPanel panel1 = new JPanel();
         panel1.setLayout(new BorderLayout());
         canvas = new GraphCanvas();
+        heuristic = new EuclideanHeuristic<DisplayNodeData<String>, Double>(canvas.graph, DisplayNodeData::getPoint);
+        pathCache = new ShortestPathCache<DisplayNodeData<String>, Double>(canvas.graph, heuristic, 16);
         PointMouseListener pml = new PointMouseListener();
         canvas.addMouseListener(pml);
         canvas.addMouseMotionListener(pml);
+        canvas.addMouseWheelListener(pml);
         panel1.add(canvas);
 
-        instr = new JLabel("Click to add new nodes; drag to move.");
+        instr = new JLabel("Click to add new nodes; drag to move. Scroll to zoom; right-drag to pan.");
         panel1.add(instr,BorderLayout.NORTH);
         pane.add(panel1);
 
@@ -112,75 +144,178 @@ public class GraphGUI {
 	pane.add(panel2);
     }
 
-    /** Method to read in predetermined file to graph */
-    public void readGraph (String filename) {
-	BufferedReader br = null;
-        try {
-            br = new BufferedReader(new FileReader(filename));
-	    for (String line = br.readLine(); line != null; line = br.readLine()) {
-		String[] lineData = line.split(" ");
-		// if first char is 'n', add new node to graph with given string name and point
-		if (lineData[0].equals("n")) {
-		    Point p = new Point (Integer.parseInt(lineData[3]), Integer.parseInt(lineData[4]));
-		    canvas.graph.addNode(new DisplayNodeData<String>(lineData[2], p));
+    /** Returns the base path of the autosave files */
+    public static java.nio.file.Path autosavePath() {
+	return java.nio.file.Paths.get(System.getProperty("user.home"), ".simplemapmaker", "autosave");
+    }
+
+    /** Offers to recover unsaved changes from the last session, then starts the autosave journal */
+    public void startJournal() {
+	java.nio.file.Path base = autosavePath();
+	try {
+	    if (EditJournal.hasRecoveryData(base)) {
+		int answer = JOptionPane.showConfirmDialog(frame, "Recover unsaved changes from the last session?", "RECOVER", JOptionPane.YES_NO_OPTION);
+		if ((answer == JOptionPane.YES_OPTION)&&(EditJournal.recover(base, canvas.graph))) {
+		    // Recovered work hasn't been saved anywhere
+		    savedEditCount = -1;
+		    canvas.repaint();
+		} else {
+		    EditJournal.discard(base);
 		}
-		// if first char is 'e', add new edge to graph with given head, tail, and data 
-		else if (lineData[0].equals("e")) {
-		    Graph<DisplayNodeData<String>, Double>.Node head = canvas.graph.getNode(Integer.parseInt(lineData[1])); 
-		    Graph<DisplayNodeData<String>, Double>.Node tail = canvas.graph.getNode(Integer.parseInt(lineData[2]));
-		    double data = Double.parseDouble(lineData[3]);
-		    canvas.graph.addEdge(data, head, tail);
+	    }
+	    journal = new EditJournal(canvas.graph, base);
+	} catch (IOException e) {
+	    JOptionPane.showMessageDialog(frame, "Autosave is off: "+e.getMessage(), "AUTOSAVE", JOptionPane.ERROR_MESSAGE);
+	    return;
+	}
+	// Checkpoint now and then, once the journal is big enough to be worth it
+	final javax.swing.Timer timer = new javax.swing.Timer(CHECKPOINT_DELAY, null);
+	timer.addActionListener(new ActionListener() {
+		public void actionPerformed(ActionEvent e) {
+		    if (journal == null) {
+			timer.stop();
+		    } else if (journal.getFailure() != null) {
+			timer.stop();
+			JOptionPane.showMessageDialog(frame, "Autosave stopped: "+journal.getFailure().getMessage(), "AUTOSAVE", JOptionPane.ERROR_MESSAGE);
+			journal.close();
+			journal = null;
+		    } else {
+			journal.checkpointIfDue();
+		    }
 		}
+	    });
+	timer.start();
+    }
+
+    /** Stops the autosave journal, removing its files if there is nothing unsaved */
+    public void stopJournal() {
+	if (journal == null) {
+	    return;
+	}
+	journal.close();
+	try {
+	    if (journal.getEditCount() == savedEditCount) {
+		EditJournal.discard(autosavePath());
 	    }
+	} catch (IOException e) {}
+	journal = null;
+    }
+
+    /** Method to read in predetermined file to graph; returns false (after telling the user) on failure */
+    public boolean readGraph (String filename) {
+	try {
+	    // Read the whole file first (binary or text), then add it to the graph in bulk
+	    java.nio.file.Path path = java.nio.file.Paths.get(filename);
+	    MapData map = BinaryGraphFile.isBinary(path) ? BinaryGraphFile.read(path) : GraphLoader.read(path);
+	    map.addTo(canvas.graph);
 	    canvas.repaint();
+	    return true;
         } catch (IOException e) {
-            System.err.println("Problem reading file "+filename);
-            System.exit(-1);
+	    JOptionPane.showMessageDialog(frame, "Problem reading file "+filename+": "+e.getMessage(), "OPEN FILE", JOptionPane.ERROR_MESSAGE);
+	    return false;
         }
     }
 
-    /** Method to print out graph to file */
-    public void saveGraph () {	
-	// Create new printwriter
-	PrintWriter out = null;
-	try {
-	    // if a graph has been opened, save to same file 
-	    if (openFile != null) {
-		out = new PrintWriter(new FileWriter(openFile));	    
-	    } else {
-		try {
-		    String s = (String)JOptionPane.showInputDialog(frame, "Type in a file name to save graph as", "SAVE FILE", JOptionPane.PLAIN_MESSAGE);
-		    if (!s.equals(null)) {
-			out = new PrintWriter(new FileWriter(s));
+    /**
+     * Loads the route index saved next to a graph file, or builds one in
+     * the background (and saves it for next time) if it is missing or
+     * out of date.  Until it is ready, directions use A*.
+     */
+    public void loadHierarchy(String filename) {
+	hierarchy = null;
+	final java.nio.file.Path path = java.nio.file.Paths.get(filename+".ch");
+	final CompactGraph<DisplayNodeData<String>, Double> view = canvas.graph.freeze();
+	SwingWorker<ContractionHierarchy<DisplayNodeData<String>, Double>, Void> worker = new SwingWorker<ContractionHierarchy<DisplayNodeData<String>, Double>, Void>() {
+		/** Loads or builds the index off the event thread */
+		protected ContractionHierarchy<DisplayNodeData<String>, Double> doInBackground() {
+		    try {
+			return ContractionHierarchy.load(view, path);
+		    } catch (IOException e) {
+			ContractionHierarchy<DisplayNodeData<String>, Double> built = ContractionHierarchy.build(view);
+			try {
+			    built.save(path);
+			} catch (IOException e2) {
+			    // Still usable; it just has to be built again next time
+			    System.err.println("Couldn't save route index "+path+": "+e2.getMessage());
+			}
+			return built;
 		    }
-		} catch (NullPointerException npe) {}
-	    }
-	    if (out != null) {
-		// Print current graph to file
-		for (int i = 0; i < canvas.graph.numNodes(); i++) {
-		    Graph<DisplayNodeData<String>, Double>.Node n = canvas.graph.getNode(i);
-		    out.println("n "+(i+1)+" "+n.getData().getData()+" "+(int)n.getData().getPoint().getX()+" "+(int)n.getData().getPoint().getY());
 		}
-		for (int j = 0; j < canvas.graph.numEdges(); j++) {
-		    Graph<DisplayNodeData<String>, Double>.Edge e = canvas.graph.getEdge(j);
-		    out.println("e "+canvas.graph.getNodeIndex(e.getHead())+" "+canvas.graph.getNodeIndex(e.getTail())+" "+e.getData());
+
+		/** Installs the index on the event thread */
+		protected void done() {
+		    try {
+			hierarchy = get();
+		    } catch (Exception e) {
+			Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+			JOptionPane.showMessageDialog(frame, "Couldn't build the route index for "+filename+": "+cause+". Directions will be slower.", "ROUTE INDEX", JOptionPane.WARNING_MESSAGE);
+		    }
 		}
+	    };
+	worker.execute();
+    }
+
+    /** Method to save graph to file in the background, replacing the file only once fully written */
+    public void saveGraph () {	
+	// if a graph has been opened, save to same file 
+	String filename = openFile;
+	if (filename == null) {
+	    filename = (String)JOptionPane.showInputDialog(frame, "Type in a file name to save graph as", "SAVE FILE", JOptionPane.PLAIN_MESSAGE);
+	    if ((filename == null)||(filename.isEmpty())) {
+		return;
 	    }
-	    //out.close();
-	} catch (IOException e) {
-	    System.err.println("Problem reading file ");
-	    System.exit(-1);
+	    openFile = filename;
 	}
+	final java.nio.file.Path path = java.nio.file.Paths.get(filename);
+	// Keep the file's format: binary if it already is, or if named that way
+	boolean binary = filename.endsWith(".smmb");
+	try {
+	    if (java.nio.file.Files.exists(path)) {
+		binary = BinaryGraphFile.isBinary(path);
+	    }
+	} catch (IOException e) {}
+	final boolean saveBinary = binary;
+	// Copy the graph here (linear time), so editing can go on during the write
+	final MapData map = MapData.from(canvas.graph);
+	final long editCount = (journal == null) ? 0 : journal.getEditCount();
+	final ProgressMonitor monitor = new ProgressMonitor(frame, "Saving "+filename, null, 0, 100);
+	monitor.setMillisToDecideToPopup(500);
+	SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+		/** Writes the file off the event thread */
+		protected Void doInBackground() throws IOException {
+		    GraphWriter.save(map, path, saveBinary, new GraphWriter.Progress() {
+			    public void progress(long done, long total) {
+				setProgress((total == 0) ? 100 : (int)(100*done/total));
+			    }
+			});
+		    return null;
+		}
+
+		/** Reports the outcome on the event thread */
+		protected void done() {
+		    monitor.close();
+		    try {
+			get();
+			savedEditCount = editCount;
+		    } catch (Exception e) {
+			Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+			JOptionPane.showMessageDialog(frame, "Problem saving file "+path+": "+cause.getMessage(), "SAVE FILE", JOptionPane.ERROR_MESSAGE);
+		    }
+		}
+	    };
+	worker.addPropertyChangeListener(new java.beans.PropertyChangeListener() {
+		public void propertyChange(java.beans.PropertyChangeEvent evt) {
+		    if ("progress".equals(evt.getPropertyName())) {
+			monitor.setProgress((Integer)evt.getNewValue());
+		    }
+		}
+	    });
+	worker.execute();
     }
 
     /** Method to clear current graph */
     public void clearGraph() {
-	while(canvas.graph.numNodes() != 0) {
-	    canvas.graph.removeNode(canvas.graph.getNode(0));
-	}
-	while(canvas.graph.numEdges() != 0) {
-	    canvas.graph.removeEdge(canvas.graph.getEdge(0));
-	}
+	canvas.graph.clear();
 	canvas.repaint();
     }
 
@@ -188,20 +323,16 @@ public class GraphGUI {
      * Returns a node found within the drawing radius of the given location, 
      * or null if none
      *
-     *  @param x  the x coordinate of the location
-     *  @param y  the y coordinate of the location
+     *  @param x  the x coordinate of the location on screen
+     *  @param y  the y coordinate of the location on screen
      *  @return  a node from the canvas if there is one covering this location, 
      *  or a null reference if not
      */
     public Graph<DisplayNodeData<String>, Double>.Node findNearbyNode(int x, int y) {
-	Graph<DisplayNodeData<String>, Double>.Node nearby = null;
-	for (int i = 0; i < canvas.graph.numNodes(); i++) {
-	    Graph<DisplayNodeData<String>, Double>.Node n = canvas.graph.getNode(i);
-	    if (n.getData().getPoint().distance(x,y) < 20) {
-                nearby = n;
-            }
-	}
-	return nearby;
+	// Nearest node within the drawing radius (20 pixels at any zoom),
+	// from the graph's spatial index
+	Point p = canvas.toWorld(new Point(x, y));
+	return canvas.graph.nearestNode(p.x, p.y, 20/canvas.getZoom());
     }
 
 
@@ -290,13 +421,25 @@ public class GraphGUI {
             } catch (NullPointerException npe) {}
 	    // clear graph before opening new one
 	    if (s != null) {
+		// A bulk load isn't journaled edit by edit; the journal restarts from a checkpoint
+		if (journal != null) {
+		    journal.pause();
+		}
 		clearGraph();
 		openFile = null;
 		try {
 		    String filename = (String)JOptionPane.showInputDialog(frame, "Type in a file name to open saved graph", "OPEN FILE", JOptionPane.PLAIN_MESSAGE);
-		    openFile = filename;
-		    readGraph(filename);
+		    if (readGraph(filename)) {
+			openFile = filename;
+			loadHierarchy(filename);
+		    }
 		} catch (NullPointerException npe) {}
+		if (journal != null) {
+		    journal.restart();
+		    if (openFile != null) {
+			savedEditCount = journal.getEditCount();
+		    }
+		}
 	    }
 	}
     }
@@ -316,10 +459,15 @@ public class GraphGUI {
 
         /** Responds to click event depending on mode */
         public void mouseClicked(MouseEvent e) {
+            // The right button only pans the view
+            if (SwingUtilities.isRightMouseButton(e)) {
+                return;
+            }
+            Graph<DisplayNodeData<String>, Double>.Node nearby = findNearbyNode(e.getX(), e.getY());
             switch (mode) {
             case ADD_NODES:
-		if (findNearbyNode(e.getX(), e.getY()) == null) {
-		    Point p = new Point (e.getX(), e.getY());
+		if (nearby == null) {
+		    Point p = canvas.toWorld(e.getPoint());
 		    // Pop up dialog box to name node
 		    try {
 			String s = (String)JOptionPane.showInputDialog(frame, "Please label this node:", "LABEL", JOptionPane.PLAIN_MESSAGE);
@@ -334,9 +482,9 @@ public class GraphGUI {
 		}
 		break;
             case RMV_NODES:
-		if (findNearbyNode(e.getX(), e.getY()) != null) {
+		if (nearby != null) {
 		    // Remove from canvas
-		    canvas.graph.removeNode(findNearbyNode(e.getX(), e.getY()));
+		    canvas.graph.removeNode(nearby);
 		} else {
 		    // Otherwise, emit a beep
 		    Toolkit.getDefaultToolkit().beep();
@@ -350,16 +498,31 @@ public class GraphGUI {
 		break;
 	    case GET_DIST:
 		// If there's a node nearby and no node recorded, record it and highlight it
-		if ((findNearbyNode(e.getX(), e.getY()) != null)&&(nodeClicked == null)) {
-		    nodeClicked = findNearbyNode(e.getX(), e.getY());
+		if ((nearby != null)&&(nodeClicked == null)) {
+		    nodeClicked = nearby;
 		    canvas.longHighlightNode = nodeClicked;
 		    canvas.longHighlight = true;
 		}
 		// If there's a node nearby and a node recorded, find shortest path between recorded node and current node
-		else if ((findNearbyNode(e.getX(), e.getY()) != null)&&(nodeClicked != null)) {
-		    DijkstraResults<DisplayNodeData<String>, Double> distInfo = canvas.graph.distance(findNearbyNode(e.getX(), e.getY()));
-		    // Recursive method in DijkstraResults returns ordered nodes list
-		    ArrayList<Graph<DisplayNodeData<String>, Double>.Node> orderedNodes = distInfo.order(nodeClicked);
+		else if ((nearby != null)&&(nodeClicked != null)) {
+		    ArrayList<Graph<DisplayNodeData<String>, Double>.Node> orderedNodes;
+		    double cost;
+		    // Use the open file's route index if it is ready and still matches
+		    if ((hierarchy != null)&&(hierarchy.isValidFor(canvas.graph))) {
+			orderedNodes = hierarchy.path(nodeClicked, nearby);
+			cost = hierarchy.distance(nodeClicked, nearby);
+			if (orderedNodes == null) {
+			    orderedNodes = new ArrayList<Graph<DisplayNodeData<String>, Double>.Node>();
+			    orderedNodes.add(nodeClicked);
+			}
+		    } else {
+			// Repeated directions from the same start come from a cached tree
+			DijkstraResults<DisplayNodeData<String>, Double> distInfo = pathCache.query(nodeClicked, nearby);
+			// Recursive method in DijkstraResults returns ordered nodes list (ending at the start)
+			orderedNodes = distInfo.order(nearby);
+			Collections.reverse(orderedNodes);
+			cost = distInfo.getCost(nearby);
+		    }
 
 		    // Make new string array
 		    ArrayList<String> nodeNames = new ArrayList<String>();
@@ -382,7 +545,7 @@ public class GraphGUI {
 		    }
 		    
 		    // Pop up box to tell you the shortest distance and directions
-		    JOptionPane.showMessageDialog(frame, "The shortest distance between these points is "+distInfo.getCosts().get(nodeClicked)+". "+directions, "DIRECTIONS", JOptionPane.PLAIN_MESSAGE);
+		    JOptionPane.showMessageDialog(frame, "The shortest distance between these points is "+cost+". "+directions, "DIRECTIONS", JOptionPane.PLAIN_MESSAGE);
 
 		    // Reset all path-highlighting related variables
 		    nodeClicked = null;
@@ -399,12 +562,23 @@ public class GraphGUI {
 
         /** Records point under mousedown event in anticipation of possible drag */
         public void mousePressed(MouseEvent e) {
-            // Record node under mouse, if any
-	    nodeUnderMouse = findNearbyNode(e.getX(), e.getY());
+            // Right button starts panning the view
+	    if (SwingUtilities.isRightMouseButton(e)) {
+		panFrom = e.getPoint();
+	    } else {
+		// Record node under mouse, if any
+		nodeUnderMouse = findNearbyNode(e.getX(), e.getY());
+	    }
         }
 
         /** Responds to mouseup event */
         public void mouseReleased(MouseEvent e) {
+	    // End of a pan: nothing else to do
+	    if (panFrom != null) {
+		panFrom = null;
+		return;
+	    }
+	    Graph<DisplayNodeData<String>, Double>.Node nearby = findNearbyNode(e.getX(), e.getY());
 	    switch(mode) {
 	    case ADD_NODES:
 		// Clear record of node under mouse, if any
@@ -418,11 +592,11 @@ public class GraphGUI {
 		    canvas.drawLine = false;
 		}
 		// If node under mouse and node at release point, add edge
-		if ((nodeUnderMouse != null)&&(findNearbyNode(e.getX(), e.getY()) != null)&&(!nodeUnderMouse.equals(findNearbyNode(e.getX(), e.getY()))&&(!nodeUnderMouse.isNeighbor(findNearbyNode(e.getX(), e.getY()))))) {
+		if ((nodeUnderMouse != null)&&(nearby != null)&&(!nodeUnderMouse.equals(nearby)&&(!nodeUnderMouse.isNeighbor(nearby)))) {
 		    // Pop up dialog box to name node
 		    try {
 			Double d = Double.parseDouble(JOptionPane.showInputDialog(frame, "Please set distance for this edge:", "DISTANCE", JOptionPane.PLAIN_MESSAGE));
-			    canvas.graph.addEdge(d, nodeUnderMouse, findNearbyNode(e.getX(), e.getY()));
+			    canvas.graph.addEdge(d, nodeUnderMouse, nearby);
 		    } catch(NumberFormatException nfe) {
 			Toolkit.getDefaultToolkit().beep();
 		    } catch(NullPointerException npe ) {}
@@ -430,8 +604,8 @@ public class GraphGUI {
 		break;
 	    case RMV_EDGES:
 		// If node under mouse, and node at release point, and they share an edge, remove that edge
-		if ((nodeUnderMouse != null)&&(findNearbyNode(e.getX(), e.getY()) != null)&&(nodeUnderMouse.isNeighbor(findNearbyNode(e.getX(), e.getY())))) {
-		    canvas.graph.removeEdge(nodeUnderMouse, findNearbyNode(e.getX(), e.getY()));
+		if ((nodeUnderMouse != null)&&(nearby != null)&&(nodeUnderMouse.isNeighbor(nearby))) {
+		    canvas.graph.removeEdge(nodeUnderMouse, nearby);
 		}
 	    }
 	    canvas.repaint();
@@ -439,34 +613,40 @@ public class GraphGUI {
 
         /** Responds to mouse drag event */
         public void mouseDragged(MouseEvent e) {
+	    // While panning, move the view along with the mouse
+	    if (panFrom != null) {
+		canvas.pan(e.getX()-panFrom.x, e.getY()-panFrom.y);
+		panFrom = e.getPoint();
+		return;
+	    }
 	    switch (mode) {
 	    case ADD_NODES:
 		// if there is a node under the mouse, change coordinates to current mouse coordinates and update display
 		if (nodeUnderMouse != null) {
-		    nodeUnderMouse.getData().setPoint(new Point(e.getX(), e.getY()));
+		    nodeUnderMouse.getData().setPoint(canvas.toWorld(e.getPoint()));
+		    canvas.graph.relocate(nodeUnderMouse);
+		    canvas.repaint();
 		}
 		break;
 		case ADD_EDGES:
 		// if there is a node under the mouse, create a line from the node to the mouse
 		if (nodeUnderMouse != null) {
-		    canvas.startNode = nodeUnderMouse;
-		    canvas.mousePoint = new Point(e.getX(), e.getY());
-		    canvas.drawLine = true;
+		    // Only the area around the line needs repainting
+		    canvas.showLine(nodeUnderMouse, new Point(e.getX(), e.getY()));
 		}
+		break;
 	    }
-	    canvas.repaint();
         }
 
 	/** Responds to mouse move event */
         public void mouseMoved(MouseEvent e) {
-	    // if there is a nearby node, highlight it
-	    if (findNearbyNode(e.getX(), e.getY()) != null) {
-		canvas.highlightNode = findNearbyNode(e.getX(), e.getY());
-		canvas.highlight = true;
-	    } else if ((findNearbyNode(e.getX(), e.getY()) == null)&&(canvas.highlight == true)) {
-		canvas.highlight = false;
-	    }
-	    canvas.repaint();
+	    // if there is a nearby node, highlight it (canvas repaints only on change)
+	    canvas.hover(findNearbyNode(e.getX(), e.getY()));
+	}
+
+	/** Responds to mouse wheel event by zooming around the mouse */
+	public void mouseWheelMoved(MouseWheelEvent e) {
+	    canvas.zoom(Math.pow(1.1, -e.getPreciseWheelRotation()), e.getPoint());
 	}
     }
 }
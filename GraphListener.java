@@ -0,0 +1,32 @@
+/**
+ * Receives notice of each change made to a Graph.  Removals are
+ * reported just before they happen, while indices are still valid;
+ * everything else just after.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public interface GraphListener<V,E> {
+
+    /** Called after a node is added */
+    void nodeAdded(Graph<V,E>.Node node);
+
+    /** Called before a node is removed (after its edges have been) */
+    void nodeRemoved(Graph<V,E>.Node node);
+
+    /** Called after a node's data or location changes */
+    void nodeChanged(Graph<V,E>.Node node);
+
+    /** Called after an edge is added */
+    void edgeAdded(Graph<V,E>.Edge edge);
+
+    /** Called before an edge is removed */
+    void edgeRemoved(Graph<V,E>.Edge edge);
+
+    /** Called after an edge's data changes */
+    void edgeChanged(Graph<V,E>.Edge edge);
+
+    /** Called before the graph is cleared */
+    void cleared();
+}
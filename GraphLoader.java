@@ -0,0 +1,297 @@
+import java.util.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Streaming reader for the text graph format:
+ *
+ *   n id label x y         a node (id is ignored; nodes are numbered from 0 in order)
+ *   e head tail weight     an edge between two earlier nodes
+ *
+ * Lines are scanned straight out of a large channel buffer and numbers
+ * are parsed from the bytes, so no String is made per line or field
+ * (labels excepted).  Blank lines and lines starting with '#' are
+ * skipped; anything else that doesn't fit the format is reported with
+ * its line number.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class GraphLoader {
+
+    /** Size of the read buffer */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Powers of ten that are exact as doubles */
+    private static final double[] POWERS_OF_TEN = {
+	1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+	1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /** Map being read into */
+    private MapData map;
+
+    /** Bytes of the current buffer */
+    private byte[] bytes;
+
+    /** Scan position within the current line */
+    private int pos;
+
+    /** End of the current line */
+    private int end;
+
+    /** Number of the current line */
+    private long line;
+
+    /** Constructs a loader that reads into the given map */
+    private GraphLoader (MapData map) {
+	this.map = map;
+    }
+
+    /** Reads a text graph file into a new map */
+    public static MapData read(Path path) throws IOException {
+	try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+	    // Guess counts from the file size (roughly 24 bytes a line) to avoid regrowing
+	    long guess = Math.min(channel.size()/24, Integer.MAX_VALUE/4);
+	    GraphLoader loader = new GraphLoader(new MapData((int)(guess/4), (int)guess));
+	    loader.scan(channel);
+	    return loader.map;
+	}
+    }
+
+    /** Reads a text graph file into a new graph */
+    public static Graph<DisplayNodeData<String>, Double> load(Path path) throws IOException {
+	return read(path).toGraph();
+    }
+
+    /** Reads the channel to the end, one line at a time */
+    private void scan(ReadableByteChannel channel) throws IOException {
+	ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+	this.bytes = buf.array();
+	this.line = 0;
+	boolean eof = false;
+	while (!eof) {
+	    eof = (channel.read(buf) < 0);
+	    int limit = buf.position();
+	    int start = 0;
+	    // Parse every complete line in the buffer
+	    for (int i = 0; i < limit; i++) {
+		if (this.bytes[i] == '\n') {
+		    parseLine(start, i);
+		    start = i+1;
+		}
+	    }
+	    if (eof) {
+		// Last line need not end with a newline
+		if (start < limit) {
+		    parseLine(start, limit);
+		}
+	    } else if ((start == 0)&&(limit == this.bytes.length)) {
+		// A line longer than the buffer: make room for it
+		buf = ByteBuffer.wrap(Arrays.copyOf(this.bytes, 2*this.bytes.length));
+		buf.position(limit);
+		this.bytes = buf.array();
+	    } else {
+		// Move the partial last line to the front and read more after it
+		System.arraycopy(this.bytes, start, this.bytes, 0, limit-start);
+		buf.position(limit-start);
+	    }
+	}
+    }
+
+    /** Parses the line in bytes [start, end) */
+    private void parseLine(int start, int end) throws GraphFormatException {
+	this.line++;
+	this.pos = start;
+	this.end = end;
+	// Ignore a Windows line ending
+	if ((this.end > this.pos)&&(this.bytes[this.end-1] == '\r')) {
+	    this.end--;
+	}
+	skipSpaces();
+	if ((this.pos == this.end)||(this.bytes[this.pos] == '#')) {
+	    return;
+	}
+	byte type = this.bytes[this.pos++];
+	if ((this.pos < this.end)&&(!isSpace(this.bytes[this.pos]))) {
+	    throw error("unknown record type");
+	}
+	if (type == 'n') {
+	    // n id label x y
+	    nextInt("node id");
+	    String label = nextToken("node label");
+	    int x = nextInt("x coordinate");
+	    int y = nextInt("y coordinate");
+	    endOfLine();
+	    this.map.addNode(label, x, y);
+	} else if (type == 'e') {
+	    // e head tail weight
+	    int head = nextInt("edge head");
+	    int tail = nextInt("edge tail");
+	    double weight = nextDouble("edge weight");
+	    endOfLine();
+	    if ((head < 0)||(head >= this.map.numNodes())) {
+		throw error("edge head "+head+" is not a node read so far");
+	    }
+	    if ((tail < 0)||(tail >= this.map.numNodes())) {
+		throw error("edge tail "+tail+" is not a node read so far");
+	    }
+	    this.map.addEdge(head, tail, weight);
+	} else {
+	    throw error("unknown record type");
+	}
+    }
+
+    /** Returns the next space-separated field as a string */
+    private String nextToken(String what) throws GraphFormatException {
+	int start = fieldStart(what);
+	return new String(this.bytes, start, this.pos-start, StandardCharsets.UTF_8);
+    }
+
+    /** Parses the next field as an int */
+    private int nextInt(String what) throws GraphFormatException {
+	int start = fieldStart(what);
+	int i = start;
+	boolean negative = false;
+	if ((this.bytes[i] == '-')||(this.bytes[i] == '+')) {
+	    negative = (this.bytes[i] == '-');
+	    i++;
+	}
+	if (i == this.pos) {
+	    throw error("bad "+what);
+	}
+	long value = 0;
+	for (; i < this.pos; i++) {
+	    int digit = this.bytes[i]-'0';
+	    if ((digit < 0)||(digit > 9)) {
+		throw error("bad "+what);
+	    }
+	    value = 10*value+digit;
+	    if (value > 1L+Integer.MAX_VALUE) {
+		throw error(what+" out of range");
+	    }
+	}
+	value = negative ? -value : value;
+	if (value > Integer.MAX_VALUE) {
+	    throw error(what+" out of range");
+	}
+	return (int)value;
+    }
+
+    /**
+     * Parses the next field as a double.  Plain decimals with at most 15
+     * significant digits and a small exponent are converted exactly with
+     * one multiply or divide; anything else goes to Double.parseDouble.
+     */
+    private double nextDouble(String what) throws GraphFormatException {
+	int start = fieldStart(what);
+	int i = start;
+	boolean negative = false;
+	if ((this.bytes[i] == '-')||(this.bytes[i] == '+')) {
+	    negative = (this.bytes[i] == '-');
+	    i++;
+	}
+	long mantissa = 0;
+	int digits = 0;
+	int significant = 0;
+	int scale = 0;
+	boolean point = false;
+	for (; i < this.pos; i++) {
+	    byte b = this.bytes[i];
+	    if ((b >= '0')&&(b <= '9')) {
+		digits++;
+		if ((significant > 0)||(b != '0')) {
+		    significant++;
+		}
+		if (significant <= 18) {
+		    mantissa = 10*mantissa+(b-'0');
+		    if (point) {
+			scale--;
+		    }
+		} else if (!point) {
+		    scale++;
+		}
+	    } else if ((b == '.')&&(!point)) {
+		point = true;
+	    } else {
+		break;
+	    }
+	}
+	int exponent = 0;
+	if ((i < this.pos)&&(digits > 0)&&((this.bytes[i] == 'e')||(this.bytes[i] == 'E'))) {
+	    int j = i+1;
+	    boolean negExp = false;
+	    if ((j < this.pos)&&((this.bytes[j] == '-')||(this.bytes[j] == '+'))) {
+		negExp = (this.bytes[j] == '-');
+		j++;
+	    }
+	    int expStart = j;
+	    for (; (j < this.pos)&&(this.bytes[j] >= '0')&&(this.bytes[j] <= '9'); j++) {
+		exponent = Math.min(10*exponent+(this.bytes[j]-'0'), 100000);
+	    }
+	    if (j > expStart) {
+		exponent = negExp ? -exponent : exponent;
+		i = j;
+	    }
+	}
+	if ((i == this.pos)&&(digits > 0)&&(significant <= 15)) {
+	    int e10 = scale+exponent;
+	    double value = mantissa;
+	    if ((e10 >= 0)&&(e10 < POWERS_OF_TEN.length)) {
+		value *= POWERS_OF_TEN[e10];
+		return negative ? -value : value;
+	    } else if ((e10 < 0)&&(-e10 < POWERS_OF_TEN.length)) {
+		value /= POWERS_OF_TEN[-e10];
+		return negative ? -value : value;
+	    }
+	}
+	// Slow path for long, huge, tiny or unusual numbers
+	try {
+	    return Double.parseDouble(new String(this.bytes, start, this.pos-start, StandardCharsets.ISO_8859_1));
+	} catch (NumberFormatException nfe) {
+	    throw error("bad "+what);
+	}
+    }
+
+    /** Moves to the next field, leaving pos at its end; returns its start */
+    private int fieldStart(String what) throws GraphFormatException {
+	skipSpaces();
+	if (this.pos == this.end) {
+	    throw error("missing "+what);
+	}
+	int start = this.pos;
+	while ((this.pos < this.end)&&(!isSpace(this.bytes[this.pos]))) {
+	    this.pos++;
+	}
+	return start;
+    }
+
+    /** Checks that nothing but spaces is left on the line */
+    private void endOfLine() throws GraphFormatException {
+	skipSpaces();
+	if (this.pos != this.end) {
+	    throw error("unexpected extra field");
+	}
+    }
+
+    /** Skips spaces and tabs */
+    private void skipSpaces() {
+	while ((this.pos < this.end)&&(isSpace(this.bytes[this.pos]))) {
+	    this.pos++;
+	}
+    }
+
+    /** Returns true for a field separator */
+    private static boolean isSpace(byte b) {
+	return (b == ' ')||(b == '\t');
+    }
+
+    /** Makes an exception for the current line */
+    private GraphFormatException error(String message) {
+	return new GraphFormatException(message, this.line);
+    }
+}
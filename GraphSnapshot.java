@@ -0,0 +1,156 @@
+import java.util.*;
+
+/**
+ * Immutable view of a graph's nodes and edges at one moment, from
+ * Graph.snapshot().  Node and edge lists are persistent vectors shared
+ * with the graph, so taking a snapshot is O(1) and later edits copy
+ * only the parts they touch.  Nothing here locks; any number of
+ * threads can read a snapshot while the graph goes on changing.
+ *
+ * Each edge's endpoints and weight are recorded as they were when the
+ * snapshot was taken.  Node and edge data objects are shared with the
+ * graph, so changes made to them in place do show through.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class GraphSnapshot<V,E> {
+
+    /** Nodes by index */
+    private PersistentVector<Graph<V,E>.Node> nodes;
+
+    /** Edges by index, with their endpoints and weights */
+    private PersistentVector<EdgeState<V,E>> edges;
+
+    /** Graph's modification count when the snapshot was taken */
+    private int modCount;
+
+    /** Compact view, built the first time it is asked for */
+    private volatile CompactGraph<V,E> compact;
+
+    /** Constructor, only called by Graph.snapshot() */
+    GraphSnapshot (PersistentVector<Graph<V,E>.Node> nodes, PersistentVector<EdgeState<V,E>> edges, int modCount) {
+	this.nodes = nodes;
+	this.edges = edges;
+	this.modCount = modCount;
+    }
+
+    /** Returns number of nodes */
+    public int numNodes() {
+	return this.nodes.size();
+    }
+
+    /** Returns number of edges */
+    public int numEdges() {
+	return this.edges.size();
+    }
+
+    /** Returns the node at the given index */
+    public Graph<V,E>.Node getNode(int i) {
+	return this.nodes.get(i);
+    }
+
+    /** Returns the edge at the given index */
+    public Graph<V,E>.Edge getEdge(int i) {
+	return this.edges.get(i).edge;
+    }
+
+    /** Returns the head of the edge at the given index */
+    public Graph<V,E>.Node getHead(int i) {
+	return this.edges.get(i).head;
+    }
+
+    /** Returns the tail of the edge at the given index */
+    public Graph<V,E>.Node getTail(int i) {
+	return this.edges.get(i).tail;
+    }
+
+    /** Returns the weight of the edge at the given index */
+    public double getWeight(int i) {
+	return this.edges.get(i).weight;
+    }
+
+    /** Returns the graph's modification count when the snapshot was taken */
+    public int getModCount() {
+	return this.modCount;
+    }
+
+    /**
+     * Returns a compact (CSR) view of the snapshot, for running the
+     * usual algorithms on it.  Built once and then shared.
+     */
+    public CompactGraph<V,E> toCompact() {
+	CompactGraph<V,E> c = this.compact;
+	if (c == null) {
+	    c = buildCompact();
+	    this.compact = c;
+	}
+	return c;
+    }
+
+    /** Packs the snapshot into a new compact view */
+    private CompactGraph<V,E> buildCompact() {
+	int n = this.nodes.size();
+	int m = this.edges.size();
+	ArrayList<Graph<V,E>.Node> nodeList = new ArrayList<Graph<V,E>.Node>(n);
+	IdentityHashMap<Graph<V,E>.Node, Integer> ids = new IdentityHashMap<Graph<V,E>.Node, Integer>(2*n);
+	for (int i = 0; i < n; i++) {
+	    Graph<V,E>.Node node = this.nodes.get(i);
+	    nodeList.add(node);
+	    ids.put(node, i);
+	}
+	ArrayList<Graph<V,E>.Edge> edgeList = new ArrayList<Graph<V,E>.Edge>(m);
+	int[] heads = new int[m];
+	int[] tails = new int[m];
+	// Count each node's arcs, then turn the counts into start offsets
+	int[] offsets = new int[n+1];
+	for (int j = 0; j < m; j++) {
+	    EdgeState<V,E> s = this.edges.get(j);
+	    edgeList.add(s.edge);
+	    heads[j] = ids.get(s.head);
+	    tails[j] = ids.get(s.tail);
+	    offsets[heads[j]+1]++;
+	    offsets[tails[j]+1]++;
+	}
+	for (int i = 0; i < n; i++) {
+	    offsets[i+1] += offsets[i];
+	}
+	int[] fill = Arrays.copyOf(offsets, n);
+	int[] targets = new int[2*m];
+	double[] weights = new double[2*m];
+	int[] arcEdges = new int[2*m];
+	for (int j = 0; j < m; j++) {
+	    double w = this.edges.get(j).weight;
+	    int a = fill[heads[j]]++;
+	    targets[a] = tails[j];
+	    weights[a] = w;
+	    arcEdges[a] = j;
+	    a = fill[tails[j]]++;
+	    targets[a] = heads[j];
+	    weights[a] = w;
+	    arcEdges[a] = j;
+	}
+	return new CompactGraph<V,E>(nodeList, edgeList, offsets, targets, weights, arcEdges);
+    }
+
+    /** An edge with its endpoints and weight at one moment */
+    static class EdgeState<V,E> {
+	/** The edge */
+	final Graph<V,E>.Edge edge;
+
+	/** Endpoints */
+	final Graph<V,E>.Node head, tail;
+
+	/** Weight */
+	final double weight;
+
+	/** Records an edge's current state */
+	EdgeState(Graph<V,E>.Edge edge) {
+	    this.edge = edge;
+	    this.head = edge.getHead();
+	    this.tail = edge.getTail();
+	    this.weight = edge.getWeight();
+	}
+    }
+}
@@ -0,0 +1,148 @@
+import java.util.*;
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Writer for graph files.  Saves go to a temporary file next to the
+ * target, which is synced and then renamed over the target, so a
+ * failed or interrupted save never leaves a truncated file behind.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class GraphWriter {
+
+    /** Size of the write buffer */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Number of lines between progress reports */
+    private static final int PROGRESS_STEP = 1 << 16;
+
+    /** Receives progress reports while a file is written */
+    public interface Progress {
+	/** Called with the number of items (nodes plus edges) written so far */
+	void progress(long done, long total);
+    }
+
+    /** Something that writes a file at the given path */
+    interface FileAction {
+	/** Writes the file */
+	void write(Path path) throws IOException;
+    }
+
+    /**
+     * Saves a map to a file, in the binary format if binary is true and
+     * as text otherwise, replacing the file atomically
+     */
+    public static void save(MapData map, Path path, boolean binary, Progress progress) throws IOException {
+	if (binary) {
+	    atomically(path, tmp -> BinaryGraphFile.write(map, tmp));
+	    if (progress != null) {
+		progress.progress((long)map.numNodes()+map.numEdges(), (long)map.numNodes()+map.numEdges());
+	    }
+	} else {
+	    atomically(path, tmp -> writeText(map, tmp, progress));
+	}
+    }
+
+    /** Writes a map as text to a file */
+    public static void writeText(MapData map, Path path) throws IOException {
+	writeText(map, path, null);
+    }
+
+    /** Writes a map as text to a file, syncing it to disk, with progress reports */
+    public static void writeText(MapData map, Path path, Progress progress) throws IOException {
+	try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+	    Writer out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8), BUFFER_SIZE);
+	    writeText(map, out, progress);
+	    out.flush();
+	    channel.force(true);
+	}
+    }
+
+    /** Writes a map as text: one line per node, then one per edge */
+    public static void writeText(MapData map, Writer out) throws IOException {
+	writeText(map, out, null);
+    }
+
+    /** Writes a map as text, with progress reports */
+    public static void writeText(MapData map, Writer out, Progress progress) throws IOException {
+	long total = (long)map.numNodes()+map.numEdges();
+	StringBuilder line = new StringBuilder(64);
+	for (int i = 0; i < map.numNodes(); i++) {
+	    line.setLength(0);
+	    line.append("n ").append(i+1).append(' ').append(map.getLabel(i)).append(' ').append(map.getX(i)).append(' ').append(map.getY(i)).append('\n');
+	    out.append(line);
+	    if ((progress != null)&&((i+1) % PROGRESS_STEP == 0)) {
+		progress.progress(i+1, total);
+	    }
+	}
+	for (int j = 0; j < map.numEdges(); j++) {
+	    line.setLength(0);
+	    line.append("e ").append(map.getHead(j)).append(' ').append(map.getTail(j)).append(' ').append(map.getWeight(j)).append('\n');
+	    out.append(line);
+	    if ((progress != null)&&((j+1) % PROGRESS_STEP == 0)) {
+		progress.progress((long)map.numNodes()+j+1, total);
+	    }
+	}
+	if (progress != null) {
+	    progress.progress(total, total);
+	}
+    }
+
+    /**
+     * Runs a write against a temporary file in the target's directory,
+     * then renames it over the target (atomically where the file system
+     * allows).  The temporary file is removed if anything fails.  The
+     * result keeps the target's permissions, or gets the usual ones for
+     * a new file (after the umask) if there was no target.
+     */
+    static void atomically(Path target, FileAction action) throws IOException {
+	Path dir = target.toAbsolutePath().getParent();
+	Path tmp = createTemp(dir, "."+target.getFileName());
+	boolean done = false;
+	try {
+	    action.write(tmp);
+	    copyPermissions(target, tmp);
+	    try {
+		Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	    } catch (AtomicMoveNotSupportedException e) {
+		Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+	    }
+	    done = true;
+	} finally {
+	    if (!done) {
+		Files.deleteIfExists(tmp);
+	    }
+	}
+    }
+
+    /**
+     * Creates an empty file with a unique name in a directory.  Unlike
+     * Files.createTempFile this doesn't force owner-only permissions.
+     */
+    private static Path createTemp(Path dir, String prefix) throws IOException {
+	Random random = new Random();
+	while (true) {
+	    Path tmp = dir.resolve(prefix+"."+Long.toUnsignedString(random.nextLong(), 36)+".tmp");
+	    try {
+		Files.newByteChannel(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE).close();
+		return tmp;
+	    } catch (FileAlreadyExistsException e) {
+		// Name taken: try another
+	    }
+	}
+    }
+
+    /** Gives a file the POSIX permissions of another, if it exists and the file system has them */
+    private static void copyPermissions(Path from, Path to) throws IOException {
+	try {
+	    Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+	} catch (NoSuchFileException|UnsupportedOperationException e) {
+	    // No target yet, or no POSIX permissions: keep the defaults
+	}
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * Lower bound on the cost of travelling between two nodes, used to
+ * steer A* searches toward their target.  To keep searches exact an
+ * estimate must never exceed the true shortest path cost, and must be
+ * consistent: estimate(a, c) <= weight(a, b) + estimate(b, c) for each
+ * edge (a, b).
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public interface Heuristic<V> {
+
+    /** Returns a lower bound on the cost of a path between two nodes' data */
+    double estimate(V from, V to);
+}
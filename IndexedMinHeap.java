@@ -0,0 +1,150 @@
+import java.util.*;
+
+/**
+ * Indexed binary min-heap over dense integer ids, keyed by doubles.
+ * Each id can be in the heap at most once, so its key can be lowered
+ * in place (decrease-key) instead of inserting duplicates.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class IndexedMinHeap {
+
+    /** Heap array of ids */
+    private int[] heap;
+
+    /** Position of each id in the heap array, or -1 if not in the heap */
+    private int[] pos;
+
+    /** Key of each id */
+    private double[] keys;
+
+    /** Number of ids currently in the heap */
+    private int size;
+
+    /** Constructs an empty heap for ids in [0, capacity) */
+    IndexedMinHeap (int capacity) {
+	this.heap = new int[capacity];
+	this.pos = new int[capacity];
+	this.keys = new double[capacity];
+	this.size = 0;
+	Arrays.fill(this.pos, -1);
+    }
+
+    /** Returns the number of ids the heap can hold */
+    public int capacity() {
+	return this.pos.length;
+    }
+
+    /** Returns number of ids in the heap */
+    public int size() {
+	return this.size;
+    }
+
+    /** Returns true if the heap is empty */
+    public boolean isEmpty() {
+	return this.size == 0;
+    }
+
+    /** Returns true if the given id is in the heap */
+    public boolean contains(int id) {
+	return this.pos[id] >= 0;
+    }
+
+    /** Returns the key of an id in the heap */
+    public double getKey(int id) {
+	return this.keys[id];
+    }
+
+    /** Removes all ids, in time proportional to the current size */
+    public void clear() {
+	for (int i = 0; i < this.size; i++) {
+	    this.pos[this.heap[i]] = -1;
+	}
+	this.size = 0;
+    }
+
+    /** Inserts an id, or lowers its key if it is already present with a larger one */
+    public void push(int id, double key) {
+	int i = this.pos[id];
+	if (i < 0) {
+	    i = this.size++;
+	    this.heap[i] = id;
+	    this.pos[id] = i;
+	    this.keys[id] = key;
+	    siftUp(i);
+	} else if (key < this.keys[id]) {
+	    this.keys[id] = key;
+	    siftUp(i);
+	}
+    }
+
+    /** Returns the id with the smallest key without removing it */
+    public int peek() {
+	if (this.size == 0) {
+	    throw new NoSuchElementException("Heap is empty");
+	}
+	return this.heap[0];
+    }
+
+    /** Returns the smallest key in the heap */
+    public double peekKey() {
+	return this.keys[peek()];
+    }
+
+    /** Removes and returns the id with the smallest key */
+    public int poll() {
+	int top = peek();
+	int last = this.heap[--this.size];
+	this.pos[top] = -1;
+	if (this.size > 0) {
+	    this.heap[0] = last;
+	    this.pos[last] = 0;
+	    siftDown(0);
+	}
+	return top;
+    }
+
+    /** Moves the entry at heap position i up until the heap is ordered */
+    private void siftUp(int i) {
+	int id = this.heap[i];
+	double key = this.keys[id];
+	while (i > 0) {
+	    int parent = (i - 1) >>> 1;
+	    int parentId = this.heap[parent];
+	    if (this.keys[parentId] <= key) {
+		break;
+	    }
+	    this.heap[i] = parentId;
+	    this.pos[parentId] = i;
+	    i = parent;
+	}
+	this.heap[i] = id;
+	this.pos[id] = i;
+    }
+
+    /** Moves the entry at heap position i down until the heap is ordered */
+    private void siftDown(int i) {
+	int id = this.heap[i];
+	double key = this.keys[id];
+	int half = this.size >>> 1;
+	while (i < half) {
+	    int child = 2 * i + 1;
+	    int childId = this.heap[child];
+	    int right = child + 1;
+	    if ((right < this.size)&&(this.keys[this.heap[right]] < this.keys[childId])) {
+		child = right;
+		childId = this.heap[right];
+	    }
+	    if (key <= this.keys[childId]) {
+		break;
+	    }
+	    this.heap[i] = childId;
+	    this.pos[childId] = i;
+	    i = child;
+	}
+	this.heap[i] = id;
+	this.pos[id] = i;
+    }
+}
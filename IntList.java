@@ -0,0 +1,46 @@
+import java.util.*;
+
+/**
+ * Growable list of ints, for search code that collects node ids
+ * without boxing them.  The fields are open so hot loops can read the
+ * values in place.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+class IntList {
+
+    /** Values; only the first size are in use */
+    int[] values = new int[8];
+
+    /** Number of values */
+    int size;
+
+    /** Appends a value */
+    void add(int v) {
+	if (this.size == this.values.length) {
+	    this.values = Arrays.copyOf(this.values, 2*this.size);
+	}
+	this.values[this.size++] = v;
+    }
+
+    /** Appends another list's values */
+    void addAll(IntList other) {
+	if (this.size+other.size > this.values.length) {
+	    this.values = Arrays.copyOf(this.values, Math.max(this.size+other.size, 2*this.values.length));
+	}
+	System.arraycopy(other.values, 0, this.values, this.size, other.size);
+	this.size += other.size;
+    }
+
+    /** Empties the list */
+    void clear() {
+	this.size = 0;
+    }
+
+    /** Returns the values as an array */
+    int[] toArray() {
+	return Arrays.copyOf(this.values, this.size);
+    }
+}
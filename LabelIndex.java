@@ -0,0 +1,49 @@
+import java.util.*;
+
+/**
+ * Lookup from node labels to node ids in a compact view of a map, for
+ * answering queries that name places.  If several nodes share a label,
+ * the one with the lowest id answers to it.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class LabelIndex {
+
+    /** Compact view the ids refer to */
+    private CompactGraph<DisplayNodeData<String>, Double> view;
+
+    /** Id of the first node with each label */
+    private HashMap<String, Integer> ids;
+
+    /** Constructs an index over a view */
+    LabelIndex (CompactGraph<DisplayNodeData<String>, Double> view) {
+	this.view = view;
+	this.ids = new HashMap<String, Integer>(2*view.numNodes());
+	for (int i = 0; i < view.numNodes(); i++) {
+	    this.ids.putIfAbsent(label(i), i);
+	}
+    }
+
+    /** Returns an index over a view */
+    public static LabelIndex of(CompactGraph<DisplayNodeData<String>, Double> view) {
+	return new LabelIndex(view);
+    }
+
+    /** Returns the view the ids refer to */
+    public CompactGraph<DisplayNodeData<String>, Double> getView() {
+	return this.view;
+    }
+
+    /** Returns the id of the node with a label, or -1 if there is none */
+    public int idOf(String label) {
+	Integer id = this.ids.get(label);
+	return (id == null) ? -1 : id;
+    }
+
+    /** Returns the label of the node with an id */
+    public String label(int id) {
+	return this.view.getNode(id).getData().getData();
+    }
+}
@@ -0,0 +1,111 @@
+import java.util.Locale;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Thread-safe histogram of latencies in nanoseconds, for reporting
+ * percentiles.  Values below 64 get a bucket each; above that, each
+ * power of two is split into 32 buckets, so any reported percentile is
+ * within about 3% of the true value while recording stays a single
+ * atomic increment.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class LatencyHistogram {
+
+    /** Bits of each value kept exactly */
+    private static final int SUB_BITS = 6;
+
+    /** Values below this get a bucket each */
+    private static final int EXACT = 1 << SUB_BITS;
+
+    /** Buckets per power of two above EXACT */
+    private static final int HALF = EXACT/2;
+
+    /** Count of values in each bucket */
+    private AtomicLongArray counts;
+
+    /** Number of values recorded */
+    private AtomicLong total;
+
+    /** Largest value recorded */
+    private AtomicLong max;
+
+    /** Constructs an empty histogram */
+    public LatencyHistogram() {
+	this.counts = new AtomicLongArray(EXACT+(64-SUB_BITS)*HALF);
+	this.total = new AtomicLong();
+	this.max = new AtomicLong();
+    }
+
+    /** Records one latency, in nanoseconds (negative values count as 0) */
+    public void record(long nanos) {
+	long v = Math.max(nanos, 0);
+	this.counts.incrementAndGet(bucket(v));
+	this.total.incrementAndGet();
+	this.max.accumulateAndGet(v, Math::max);
+    }
+
+    /** Returns number of values recorded */
+    public long count() {
+	return this.total.get();
+    }
+
+    /** Returns the largest value recorded, in nanoseconds */
+    public long max() {
+	return this.max.get();
+    }
+
+    /**
+     * Returns the value at a percentile (0 to 100) in nanoseconds: the
+     * top of the bucket holding it, capped at the largest value seen.
+     * Returns 0 if nothing has been recorded.
+     */
+    public long percentile(double p) {
+	long n = this.total.get();
+	if (n == 0) {
+	    return 0;
+	}
+	long rank = Math.max(1, (long)Math.ceil(n*p/100.0));
+	long seen = 0;
+	for (int b = 0; b < this.counts.length(); b++) {
+	    seen += this.counts.get(b);
+	    if (seen >= rank) {
+		return Math.min(upperBound(b), this.max.get());
+	    }
+	}
+	return this.max.get();
+    }
+
+    /** Returns count and common percentiles in microseconds, on one line */
+    public String summary() {
+	return "count="+count()+" p50="+micros(percentile(50))+"us p90="+micros(percentile(90))
+	    +"us p99="+micros(percentile(99))+"us p99.9="+micros(percentile(99.9))+"us max="+micros(max())+"us";
+    }
+
+    /** Returns the bucket holding a value */
+    private static int bucket(long v) {
+	if (v < EXACT) {
+	    return (int)v;
+	}
+	int shift = 64-Long.numberOfLeadingZeros(v)-SUB_BITS;
+	int top = (int)(v >>> shift);
+	return EXACT+(shift-1)*HALF+(top-HALF);
+    }
+
+    /** Returns the largest value in a bucket */
+    private static long upperBound(int b) {
+	if (b < EXACT) {
+	    return b;
+	}
+	int shift = (b-EXACT)/HALF+1;
+	long top = HALF+(b-EXACT)%HALF;
+	return ((top+1) << shift)-1;
+    }
+
+    /** Formats nanoseconds as microseconds with one decimal */
+    private static String micros(long nanos) {
+	return String.format("%.1f", nanos/1000.0);
+    }
+}
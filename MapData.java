@@ -0,0 +1,162 @@
+import java.util.*;
+import java.awt.*;
+
+/**
+ * Flat, array-based copy of a map (labelled, located nodes and weighted
+ * edges) used to move maps between files and graphs in bulk.  Nodes are
+ * numbered in order from 0, and edges refer to nodes by number.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class MapData {
+
+    /** Batches with at least this many edges are added to graphs in parallel */
+    private static final int PARALLEL_EDGES = 1 << 16;
+
+    /** Number of nodes */
+    private int nodeCount;
+
+    /** Number of edges */
+    private int edgeCount;
+
+    /** Node labels */
+    private String[] labels;
+
+    /** Node x coordinates */
+    private int[] xs;
+
+    /** Node y coordinates */
+    private int[] ys;
+
+    /** Edge heads, as node numbers */
+    private int[] heads;
+
+    /** Edge tails, as node numbers */
+    private int[] tails;
+
+    /** Edge weights */
+    private double[] weights;
+
+    /** Constructs an empty map with room for the given numbers of nodes and edges */
+    MapData (int nodeCapacity, int edgeCapacity) {
+	this.labels = new String[Math.max(nodeCapacity, 4)];
+	this.xs = new int[this.labels.length];
+	this.ys = new int[this.labels.length];
+	this.heads = new int[Math.max(edgeCapacity, 4)];
+	this.tails = new int[this.heads.length];
+	this.weights = new double[this.heads.length];
+    }
+
+    /** Copies a displayed graph, numbering nodes by their master list index */
+    public static MapData from(Graph<DisplayNodeData<String>, Double> graph) {
+	MapData map = new MapData(graph.numNodes(), graph.numEdges());
+	for (int i = 0; i < graph.numNodes(); i++) {
+	    DisplayNodeData<String> data = graph.getNode(i).getData();
+	    map.addNode(data.getData(), data.getPoint().x, data.getPoint().y);
+	}
+	for (int j = 0; j < graph.numEdges(); j++) {
+	    Graph<DisplayNodeData<String>, Double>.Edge e = graph.getEdge(j);
+	    map.addEdge(e.getHead().getIndex(), e.getTail().getIndex(), e.getData());
+	}
+	return map;
+    }
+
+    /** Returns number of nodes */
+    public int numNodes() {
+	return this.nodeCount;
+    }
+
+    /** Returns number of edges */
+    public int numEdges() {
+	return this.edgeCount;
+    }
+
+    /** Returns a node's label */
+    public String getLabel(int i) {
+	return this.labels[i];
+    }
+
+    /** Returns a node's x coordinate */
+    public int getX(int i) {
+	return this.xs[i];
+    }
+
+    /** Returns a node's y coordinate */
+    public int getY(int i) {
+	return this.ys[i];
+    }
+
+    /** Returns an edge's head */
+    public int getHead(int j) {
+	return this.heads[j];
+    }
+
+    /** Returns an edge's tail */
+    public int getTail(int j) {
+	return this.tails[j];
+    }
+
+    /** Returns an edge's weight */
+    public double getWeight(int j) {
+	return this.weights[j];
+    }
+
+    /** Appends a node */
+    public void addNode(String label, int x, int y) {
+	if (this.nodeCount == this.labels.length) {
+	    int size = growth(this.nodeCount);
+	    this.labels = Arrays.copyOf(this.labels, size);
+	    this.xs = Arrays.copyOf(this.xs, size);
+	    this.ys = Arrays.copyOf(this.ys, size);
+	}
+	this.labels[this.nodeCount] = label;
+	this.xs[this.nodeCount] = x;
+	this.ys[this.nodeCount] = y;
+	this.nodeCount++;
+    }
+
+    /** Appends an edge between two node numbers */
+    public void addEdge(int head, int tail, double weight) {
+	if (this.edgeCount == this.heads.length) {
+	    int size = growth(this.edgeCount);
+	    this.heads = Arrays.copyOf(this.heads, size);
+	    this.tails = Arrays.copyOf(this.tails, size);
+	    this.weights = Arrays.copyOf(this.weights, size);
+	}
+	this.heads[this.edgeCount] = head;
+	this.tails[this.edgeCount] = tail;
+	this.weights[this.edgeCount] = weight;
+	this.edgeCount++;
+    }
+
+    /** Builds a new graph holding this map */
+    public Graph<DisplayNodeData<String>, Double> toGraph() {
+	Graph<DisplayNodeData<String>, Double> graph = new Graph<DisplayNodeData<String>, Double>();
+	addTo(graph);
+	return graph;
+    }
+
+    /**
+     * Adds this map's nodes and edges to a graph, after any nodes it
+     * already has, as one batch (see GraphBuilder).  Edges that would be
+     * self-loops or duplicates are skipped, as Graph.addEdge does.
+     */
+    public void addTo(Graph<DisplayNodeData<String>, Double> graph) {
+	GraphBuilder<DisplayNodeData<String>, Double> builder = GraphBuilder.withCapacity(this.nodeCount, this.edgeCount);
+	for (int i = 0; i < this.nodeCount; i++) {
+	    builder.addNode(new DisplayNodeData<String>(this.labels[i], new Point(this.xs[i], this.ys[i])));
+	}
+	for (int j = 0; j < this.edgeCount; j++) {
+	    builder.addEdge(this.weights[j], this.heads[j], this.tails[j]);
+	}
+	builder.setParallel(this.edgeCount >= PARALLEL_EDGES);
+	builder.addTo(graph);
+    }
+
+    /** Returns the next array size when growing from the given one */
+    private static int growth(int size) {
+	return (int)Math.min(Integer.MAX_VALUE-8, Math.max(16L, size+(long)(size >> 1)));
+    }
+}
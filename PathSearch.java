@@ -0,0 +1,165 @@
+import java.util.*;
+
+/**
+ * Reusable Dijkstra search over a compact graph view.  The arrays are
+ * allocated once and entries are marked with a per-search version
+ * number instead of being cleared, so each search costs only what it
+ * touches.  One instance per thread; keep one per worker when running
+ * many searches, as the distance matrix and batch router do.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class PathSearch<V,E> {
+
+    /** View searched */
+    private CompactGraph<V,E> graph;
+
+    /** Cost of each node reached in the current search */
+    private double[] cost;
+
+    /** Previous node on each reached node's path */
+    private int[] signpost;
+
+    /** Version in which each node was reached, and settled */
+    private int[] reached, settled;
+
+    /** Version in which each node was marked a target, for run(source, targets) */
+    private int[] targetMark;
+
+    /** Current search version */
+    private int version;
+
+    /** Heap of reached, unsettled nodes */
+    private IndexedMinHeap heap;
+
+    /** Constructs search state for a view */
+    public PathSearch(CompactGraph<V,E> graph) {
+	int n = graph.numNodes();
+	this.graph = graph;
+	this.cost = new double[n];
+	this.signpost = new int[n];
+	this.reached = new int[n];
+	this.settled = new int[n];
+	this.targetMark = new int[n];
+	this.heap = new IndexedMinHeap(n);
+    }
+
+    /** Returns the view searched */
+    public CompactGraph<V,E> getGraph() {
+	return this.graph;
+    }
+
+    /** Searches from a source until target is settled (or everything, with target -1) */
+    public void run(int source, int target) {
+	start(source);
+	while (!this.heap.isEmpty()) {
+	    if (settle() == target) {
+		break;
+	    }
+	}
+    }
+
+    /**
+     * Searches from a source until every node flagged in isTarget is
+     * settled; count is the number of flagged nodes
+     */
+    public void run(int source, boolean[] isTarget, int count) {
+	start(source);
+	int left = count;
+	while ((left > 0)&&(!this.heap.isEmpty())) {
+	    if (isTarget[settle()]) {
+		left--;
+	    }
+	}
+    }
+
+    /**
+     * Searches from a source until every node in targets is settled;
+     * targets may repeat.  Needs no flag array from the caller.
+     */
+    public void run(int source, int[] targets) {
+	start(source);
+	int left = 0;
+	for (int t : targets) {
+	    if (this.targetMark[t] != this.version) {
+		this.targetMark[t] = this.version;
+		left++;
+	    }
+	}
+	while ((left > 0)&&(!this.heap.isEmpty())) {
+	    if (this.targetMark[settle()] == this.version) {
+		left--;
+	    }
+	}
+    }
+
+    /** Returns cost of a node in the last search (Double.MAX_VALUE if unreached) */
+    public double cost(int id) {
+	return (this.reached[id] == this.version) ? this.cost[id] : Double.MAX_VALUE;
+    }
+
+    /** Returns true if a node's cost in the last search is final */
+    public boolean isSettled(int id) {
+	return this.settled[id] == this.version;
+    }
+
+    /** Returns the node before one on its path in the last search, or -1 for the source or an unreached node */
+    public int signpost(int id) {
+	return (this.reached[id] == this.version) ? this.signpost[id] : -1;
+    }
+
+    /** Returns node ids on the path to a settled node, source first, or null if it isn't settled */
+    public int[] path(int target) {
+	if (!isSettled(target)) {
+	    return null;
+	}
+	int length = 1;
+	for (int i = target; this.signpost[i] >= 0; i = this.signpost[i]) {
+	    length++;
+	}
+	int[] ids = new int[length];
+	for (int i = target, k = length-1; k >= 0; i = this.signpost[i], k--) {
+	    ids[k] = i;
+	}
+	return ids;
+    }
+
+    /** Resets state for a new search from a source */
+    private void start(int source) {
+	this.version++;
+	if (this.version == 0) {
+	    Arrays.fill(this.reached, 0);
+	    Arrays.fill(this.settled, 0);
+	    Arrays.fill(this.targetMark, 0);
+	    this.version = 1;
+	}
+	this.heap.clear();
+	this.reached[source] = this.version;
+	this.cost[source] = 0.0;
+	this.signpost[source] = -1;
+	this.heap.push(source, 0.0);
+    }
+
+    /** Settles the cheapest node in the heap, relaxing its arcs, and returns it */
+    private int settle() {
+	int current = this.heap.poll();
+	this.settled[current] = this.version;
+	double base = this.cost[current];
+	for (int a = this.graph.firstArc(current); a < this.graph.endArc(current); a++) {
+	    int next = this.graph.target(a);
+	    if (this.settled[next] == this.version) {
+		continue;
+	    }
+	    double possCost = base+this.graph.weight(a);
+	    if ((this.reached[next] != this.version)||(possCost < this.cost[next])) {
+		this.reached[next] = this.version;
+		this.cost[next] = possCost;
+		this.signpost[next] = current;
+		this.heap.push(next, possCost);
+	    }
+	}
+	return current;
+    }
+}
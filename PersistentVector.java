@@ -0,0 +1,316 @@
+import java.util.*;
+
+/**
+ * Immutable vector with O(1) copies, stored as a trie of 32-slot
+ * blocks plus a tail block holding the last partial block.  Changing a
+ * persistent vector copies only the blocks on the path to the changed
+ * slot, so old and new versions share everything else.
+ *
+ * Batches of changes go through a Transient, which owns the blocks it
+ * has copied and changes those in place.  Turning it back into a
+ * persistent vector is O(1) and gives up that ownership, so the next
+ * transient copies a path again the first time it touches it.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class PersistentVector<T> {
+
+    /** Bits of index used at each trie level */
+    private static final int BITS = 5;
+
+    /** Slots per block */
+    private static final int WIDTH = 1 << BITS;
+
+    /** Mask for the slot within a block */
+    private static final int MASK = WIDTH-1;
+
+    /** Root block of every vector with an empty trie */
+    private static final Block EMPTY_ROOT = new Block(null, new Object[WIDTH]);
+
+    /** The empty vector */
+    private static final PersistentVector<Object> EMPTY = new PersistentVector<Object>(0, BITS, EMPTY_ROOT, new Object[0]);
+
+    /** Number of elements */
+    private final int size;
+
+    /** Bits to shift an index by to find its slot in the root */
+    private final int shift;
+
+    /** Root of the trie holding every element before the tail */
+    private final Block root;
+
+    /** Last elements, not yet pushed into the trie */
+    private final Object[] tail;
+
+    /** Constructs a vector from its parts */
+    private PersistentVector(int size, int shift, Block root, Object[] tail) {
+	this.size = size;
+	this.shift = shift;
+	this.root = root;
+	this.tail = tail;
+    }
+
+    /** Returns the empty vector */
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentVector<T> empty() {
+	return (PersistentVector<T>)EMPTY;
+    }
+
+    /** Returns number of elements */
+    public int size() {
+	return this.size;
+    }
+
+    /** Returns the element at an index */
+    @SuppressWarnings("unchecked")
+    public T get(int i) {
+	if ((i < 0)||(i >= this.size)) {
+	    throw new IndexOutOfBoundsException("Index "+i+" out of bounds for size "+this.size);
+	}
+	return (T)blockFor(this.size, this.shift, this.root, this.tail, i)[i & MASK];
+    }
+
+    /** Returns a vector with one element replaced */
+    public PersistentVector<T> set(int i, T value) {
+	Transient<T> t = asTransient();
+	t.set(i, value);
+	return t.persistent();
+    }
+
+    /** Returns a vector with an element added at the end */
+    public PersistentVector<T> push(T value) {
+	Transient<T> t = asTransient();
+	t.push(value);
+	return t.persistent();
+    }
+
+    /** Returns a vector without its last element */
+    public PersistentVector<T> pop() {
+	Transient<T> t = asTransient();
+	t.pop();
+	return t.persistent();
+    }
+
+    /** Returns a transient starting from this vector, which is left unchanged */
+    public Transient<T> asTransient() {
+	return new Transient<T>(this);
+    }
+
+    /** Returns the index of the first element in the tail */
+    private static int tailOffset(int size) {
+	return (size < WIDTH) ? 0 : ((size-1) >>> BITS) << BITS;
+    }
+
+    /** Returns the block holding an index */
+    private static Object[] blockFor(int size, int shift, Block root, Object[] tail, int i) {
+	if (i >= tailOffset(size)) {
+	    return tail;
+	}
+	Block block = root;
+	for (int level = shift; level > 0; level -= BITS) {
+	    block = (Block)block.array[(i >>> level) & MASK];
+	}
+	return block.array;
+    }
+
+    /** Trie block, owned by the transient whose edit token it carries */
+    private static class Block {
+	/** Token of the transient allowed to change this block in place */
+	final Object edit;
+
+	/** Child blocks, or elements at the bottom level */
+	final Object[] array;
+
+	/** Constructs a block */
+	Block(Object edit, Object[] array) {
+	    this.edit = edit;
+	    this.array = array;
+	}
+    }
+
+    /**
+     * Vector that changes in place, copying only blocks it doesn't own
+     * yet.  It must not be used after persistent() is called.
+     */
+    public static class Transient<T> {
+	/** Token marking the blocks this transient owns, or null once finished */
+	private Object edit;
+
+	/** Number of elements */
+	private int size;
+
+	/** Bits to shift an index by to find its slot in the root */
+	private int shift;
+
+	/** Root of the trie */
+	private Block root;
+
+	/** Full-width tail block, owned by this transient */
+	private Object[] tail;
+
+	/** Starts from a persistent vector */
+	Transient(PersistentVector<T> v) {
+	    this.edit = new Object();
+	    this.size = v.size;
+	    this.shift = v.shift;
+	    this.root = new Block(this.edit, v.root.array.clone());
+	    this.tail = Arrays.copyOf(v.tail, WIDTH);
+	}
+
+	/** Returns number of elements */
+	public int size() {
+	    return this.size;
+	}
+
+	/** Returns the element at an index */
+	@SuppressWarnings("unchecked")
+	public T get(int i) {
+	    ensureEditable();
+	    if ((i < 0)||(i >= this.size)) {
+		throw new IndexOutOfBoundsException("Index "+i+" out of bounds for size "+this.size);
+	    }
+	    return (T)blockFor(this.size, this.shift, this.root, this.tail, i)[i & MASK];
+	}
+
+	/** Replaces the element at an index */
+	public void set(int i, T value) {
+	    ensureEditable();
+	    if ((i < 0)||(i >= this.size)) {
+		throw new IndexOutOfBoundsException("Index "+i+" out of bounds for size "+this.size);
+	    }
+	    if (i >= tailOffset(this.size)) {
+		this.tail[i & MASK] = value;
+		return;
+	    }
+	    this.root = editable(this.root);
+	    Block block = this.root;
+	    for (int level = this.shift; level > 0; level -= BITS) {
+		int slot = (i >>> level) & MASK;
+		Block child = editable((Block)block.array[slot]);
+		block.array[slot] = child;
+		block = child;
+	    }
+	    block.array[i & MASK] = value;
+	}
+
+	/** Adds an element at the end */
+	public void push(T value) {
+	    ensureEditable();
+	    if (this.size-tailOffset(this.size) < WIDTH) {
+		this.tail[this.size & MASK] = value;
+		this.size++;
+		return;
+	    }
+	    // Full tail: move it into the trie, growing a level if the trie is full
+	    Block full = new Block(this.edit, this.tail);
+	    this.tail = new Object[WIDTH];
+	    this.tail[0] = value;
+	    if ((this.size >>> BITS) > (1 << this.shift)) {
+		Object[] top = new Object[WIDTH];
+		top[0] = this.root;
+		top[1] = newPath(this.shift, full);
+		this.root = new Block(this.edit, top);
+		this.shift += BITS;
+	    } else {
+		this.root = pushTail(this.shift, this.root, full);
+	    }
+	    this.size++;
+	}
+
+	/** Removes the last element */
+	public void pop() {
+	    ensureEditable();
+	    if (this.size == 0) {
+		throw new IllegalStateException("Can't pop an empty vector");
+	    }
+	    int last = this.size-1;
+	    if ((this.size == 1)||((last & MASK) > 0)) {
+		this.tail[last & MASK] = null;
+		this.size--;
+		return;
+	    }
+	    // Last element was alone in the tail: the trie's last block becomes the tail
+	    Object[] newTail = blockFor(this.size, this.shift, this.root, this.tail, this.size-2).clone();
+	    Block newRoot = popTail(this.shift, this.root);
+	    if (newRoot == null) {
+		newRoot = new Block(this.edit, new Object[WIDTH]);
+	    }
+	    if ((this.shift > BITS)&&(newRoot.array[1] == null)) {
+		newRoot = editable((Block)newRoot.array[0]);
+		this.shift -= BITS;
+	    }
+	    this.root = newRoot;
+	    this.tail = newTail;
+	    this.size--;
+	}
+
+	/** Returns a persistent vector holding the current elements and finishes this transient */
+	public PersistentVector<T> persistent() {
+	    ensureEditable();
+	    this.edit = null;
+	    int count = this.size-tailOffset(this.size);
+	    return new PersistentVector<T>(this.size, this.shift, this.root, Arrays.copyOf(this.tail, count));
+	}
+
+	/** Fails if persistent() has been called */
+	private void ensureEditable() {
+	    if (this.edit == null) {
+		throw new IllegalStateException("Transient used after persistent()");
+	    }
+	}
+
+	/** Returns the block itself if this transient owns it, otherwise an owned copy */
+	private Block editable(Block block) {
+	    if (block.edit == this.edit) {
+		return block;
+	    }
+	    return new Block(this.edit, block.array.clone());
+	}
+
+	/** Returns a chain of new blocks from the given level down to a leaf block */
+	private Block newPath(int level, Block leaf) {
+	    if (level == 0) {
+		return leaf;
+	    }
+	    Object[] array = new Object[WIDTH];
+	    array[0] = newPath(level-BITS, leaf);
+	    return new Block(this.edit, array);
+	}
+
+	/** Adds a full leaf block at the end of the trie below a block */
+	private Block pushTail(int level, Block parent, Block leaf) {
+	    Block result = editable(parent);
+	    int slot = ((this.size-1) >>> level) & MASK;
+	    Block child;
+	    if (level == BITS) {
+		child = leaf;
+	    } else {
+		Block next = (Block)result.array[slot];
+		child = (next != null) ? pushTail(level-BITS, next, leaf) : newPath(level-BITS, leaf);
+	    }
+	    result.array[slot] = child;
+	    return result;
+	}
+
+	/** Removes the trie's last leaf block below a block; returns null if the block empties */
+	private Block popTail(int level, Block block) {
+	    int slot = ((this.size-2) >>> level) & MASK;
+	    if (level > BITS) {
+		Block child = popTail(level-BITS, (Block)block.array[slot]);
+		if ((child == null)&&(slot == 0)) {
+		    return null;
+		}
+		Block result = editable(block);
+		result.array[slot] = child;
+		return result;
+	    } else if (slot == 0) {
+		return null;
+	    }
+	    Block result = editable(block);
+	    result.array[slot] = null;
+	    return result;
+	}
+    }
+}
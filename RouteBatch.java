@@ -0,0 +1,225 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Command line batch router.  Reads a graph and a file of label pairs,
+ * one "from to" pair per line, and writes one "distance,path" line per
+ * pair, in the same order, where path is the labels along the route
+ * separated by spaces.  Pairs with no route (or an unknown label) get
+ * "none,".
+ *
+ * Pairs are read in chunks and answered on a pool of worker threads,
+ * each keeping its own reusable search state.  Within a chunk, pairs
+ * with the same source share one search.  Only a bounded number of
+ * chunks are in flight at once, and answers are written as soon as
+ * every earlier chunk is done, so memory stays bounded however long the
+ * pairs file is.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class RouteBatch {
+
+    /** Pairs answered as one task */
+    private static final int CHUNK_SIZE = 4096;
+
+    /** Size of the output buffer */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Labels and ids of the graph's compact view */
+    private LabelIndex labels;
+
+    /** Each worker thread's search state */
+    private ThreadLocal<PathSearch<DisplayNodeData<String>, Double>> searches;
+
+    /** Number of pairs naming a label the graph doesn't have */
+    private AtomicLong unknown;
+
+    /** Number of pairs with no route */
+    private AtomicLong unreachable;
+
+    /** Constructs a router over a compact view */
+    RouteBatch (CompactGraph<DisplayNodeData<String>, Double> view) {
+	this.labels = LabelIndex.of(view);
+	this.searches = ThreadLocal.withInitial(() -> new PathSearch<DisplayNodeData<String>, Double>(view));
+	this.unknown = new AtomicLong();
+	this.unreachable = new AtomicLong();
+    }
+
+    /** Returns number of pairs so far that named an unknown label */
+    public long getUnknown() {
+	return this.unknown.get();
+    }
+
+    /** Returns number of pairs so far with no route */
+    public long getUnreachable() {
+	return this.unreachable.get();
+    }
+
+    /**
+     * Answers every pair read from in, writing the answers to out in
+     * order, and returns the number of pairs.  At most window chunks
+     * are queued on the pool or waiting to be written at once.
+     */
+    public long run(BufferedReader in, Writer out, ExecutorService pool, int window) throws IOException {
+	ArrayDeque<Future<String>> pending = new ArrayDeque<Future<String>>();
+	long pairs = 0;
+	long lineNumber = 0;
+	boolean more = true;
+	while (more) {
+	    String[] from = new String[CHUNK_SIZE];
+	    String[] to = new String[CHUNK_SIZE];
+	    int count = 0;
+	    String line;
+	    while ((count < CHUNK_SIZE)&&((line = in.readLine()) != null)) {
+		lineNumber++;
+		line = line.trim();
+		if ((line.isEmpty())||(line.startsWith("#"))) {
+		    continue;
+		}
+		String[] words = line.split("\\s+");
+		if (words.length != 2) {
+		    throw new GraphFormatException("line "+lineNumber+": expected two labels");
+		}
+		from[count] = words[0];
+		to[count] = words[1];
+		count++;
+	    }
+	    more = (count == CHUNK_SIZE);
+	    if (count > 0) {
+		final int n = count;
+		pending.add(pool.submit(() -> answer(from, to, n)));
+		pairs += count;
+	    }
+	    // Write finished chunks in order, waiting if too many are in flight
+	    while ((!pending.isEmpty())&&((pending.size() >= window)||(pending.peek().isDone())||(!more))) {
+		out.write(result(pending.poll()));
+	    }
+	}
+	return pairs;
+    }
+
+    /** Answers a chunk of pairs, returning its output lines */
+    String answer(String[] from, String[] to, int count) {
+	CompactGraph<DisplayNodeData<String>, Double> view = this.labels.getView();
+	PathSearch<DisplayNodeData<String>, Double> search = this.searches.get();
+	String[] lines = new String[count];
+	// Sort pair numbers by source id, so each source is searched once
+	long[] order = new long[count];
+	int known = 0;
+	for (int k = 0; k < count; k++) {
+	    int source = this.labels.idOf(from[k]);
+	    int target = this.labels.idOf(to[k]);
+	    if ((source < 0)||(target < 0)) {
+		lines[k] = "none,\n";
+		this.unknown.incrementAndGet();
+	    } else {
+		order[known++] = (((long)source) << 32)|k;
+	    }
+	}
+	Arrays.sort(order, 0, known);
+	for (int first = 0; first < known; ) {
+	    int source = (int)(order[first] >>> 32);
+	    int last = first;
+	    while ((last < known)&&((int)(order[last] >>> 32) == source)) {
+		last++;
+	    }
+	    int[] targets = new int[last-first];
+	    for (int i = first; i < last; i++) {
+		targets[i-first] = this.labels.idOf(to[(int)order[i]]);
+	    }
+	    search.run(source, targets);
+	    for (int i = first; i < last; i++) {
+		int k = (int)order[i];
+		int target = targets[i-first];
+		if (!search.isSettled(target)) {
+		    lines[k] = "none,\n";
+		    this.unreachable.incrementAndGet();
+		    continue;
+		}
+		StringBuilder line = new StringBuilder().append(search.cost(target)).append(',');
+		int[] path = search.path(target);
+		for (int p = 0; p < path.length; p++) {
+		    if (p > 0) {
+			line.append(' ');
+		    }
+		    line.append(this.labels.label(path[p]));
+		}
+		lines[k] = line.append('\n').toString();
+	    }
+	    first = last;
+	}
+	StringBuilder chunk = new StringBuilder(32*count);
+	for (String line : lines) {
+	    chunk.append(line);
+	}
+	return chunk.toString();
+    }
+
+    /** Waits for a chunk's answers, passing on any failure as an IOException */
+    private static String result(Future<String> chunk) throws IOException {
+	try {
+	    return chunk.get();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new InterruptedIOException("interrupted waiting for answers");
+	} catch (ExecutionException e) {
+	    throw new IOException("routing failed: "+e.getCause(), e.getCause());
+	}
+    }
+
+    /** Command line router: graphfile pairsfile outputfile [threads] */
+    public static void main(String[] args) {
+	if ((args.length < 3)||(args.length > 4)) {
+	    System.err.println("Usage: java RouteBatch graphfile pairsfile outputfile [threads]");
+	    System.exit(2);
+	}
+	int threads = Runtime.getRuntime().availableProcessors();
+	try {
+	    if (args.length > 3) {
+		threads = Integer.parseInt(args[3]);
+	    }
+	} catch (NumberFormatException e) {
+	    System.err.println("Thread count must be a whole number: "+args[3]);
+	    System.exit(2);
+	}
+	if (threads < 1) {
+	    System.err.println("Thread count must be at least 1: "+args[3]);
+	    System.exit(2);
+	}
+	ExecutorService pool = Executors.newFixedThreadPool(threads);
+	int window = 2*threads+2;
+	try {
+	    Path graphPath = Paths.get(args[0]);
+	    MapData map = BinaryGraphFile.isBinary(graphPath) ? BinaryGraphFile.read(graphPath) : GraphLoader.read(graphPath);
+	    RouteBatch router = new RouteBatch(map.toGraph().freeze());
+	    long start = System.nanoTime();
+	    long[] pairs = new long[1];
+	    try (BufferedReader in = Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+		GraphWriter.atomically(Paths.get(args[2]), tmp -> {
+		    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+			Writer out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8), BUFFER_SIZE);
+			pairs[0] = router.run(in, out, pool, window);
+			out.flush();
+			channel.force(true);
+		    }
+		});
+	    }
+	    double seconds = (System.nanoTime()-start)/1e9;
+	    System.out.println("Answered "+pairs[0]+" queries in "+String.format(Locale.ROOT, "%.2f", seconds)+" s ("
+			       +String.format(Locale.ROOT, "%.0f", pairs[0]/seconds)+" queries/s), "
+			       +router.getUnreachable()+" unreachable, "+router.getUnknown()+" with unknown labels");
+	} catch (IOException e) {
+	    System.err.println("Problem routing "+args[1]+": "+e.getMessage());
+	    System.exit(1);
+	} finally {
+	    pool.shutdownNow();
+	}
+    }
+}
@@ -0,0 +1,164 @@
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Load-generating client for RouteServer on this machine.  Opens a
+ * number of connections and sends random DIST, ROUTE and NEAR queries
+ * over the map's labels and area, keeping up to a window of queries in
+ * flight on each connection.  Prints throughput and client-side
+ * latency percentiles, then the server's own latency figures.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class RouteLoadGenerator {
+
+    /** Map queried, for picking labels and locations */
+    private MapData map;
+
+    /** Server port on the loopback address */
+    private int port;
+
+    /** Most queries in flight on one connection */
+    private int window;
+
+    /** Round-trip latency of every query */
+    private LatencyHistogram latency;
+
+    /** Number of answers that were errors */
+    private AtomicLong errors;
+
+    /** Constructs a generator for a map served on a port */
+    RouteLoadGenerator (MapData map, int port, int window) {
+	this.map = map;
+	this.port = port;
+	this.window = window;
+	this.latency = new LatencyHistogram();
+	this.errors = new AtomicLong();
+    }
+
+    /** Returns the round-trip latency of queries sent so far */
+    public LatencyHistogram getLatency() {
+	return this.latency;
+    }
+
+    /** Returns number of error answers so far */
+    public long getErrors() {
+	return this.errors.get();
+    }
+
+    /** Sends queries over one connection, with answers read as they come back */
+    public void run(int queries, long seed) throws IOException {
+	Random random = new Random(seed);
+	try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), this.port);
+	     BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+	     Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+	    socket.setTcpNoDelay(true);
+	    ArrayDeque<Long> sent = new ArrayDeque<Long>();
+	    int next = 0;
+	    int answered = 0;
+	    while (answered < queries) {
+		while ((next < queries)&&(sent.size() < this.window)) {
+		    out.write(randomQuery(random));
+		    out.write('\n');
+		    sent.add(System.nanoTime());
+		    next++;
+		}
+		out.flush();
+		String answer = in.readLine();
+		if (answer == null) {
+		    throw new EOFException("server closed the connection");
+		}
+		this.latency.record(System.nanoTime()-sent.poll());
+		if (answer.startsWith("ERR")) {
+		    this.errors.incrementAndGet();
+		}
+		answered++;
+	    }
+	    out.write("QUIT\n");
+	    out.flush();
+	    in.readLine();
+	}
+    }
+
+    /** Asks the server for its latency figures */
+    public String serverStats() throws IOException {
+	try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), this.port);
+	     BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+	     Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+	    out.write("STATS\nQUIT\n");
+	    out.flush();
+	    return in.readLine();
+	}
+    }
+
+    /** Returns a random query line: mostly distances, some routes and nearest-node lookups */
+    private String randomQuery(Random random) {
+	int n = this.map.numNodes();
+	int kind = random.nextInt(10);
+	if (kind == 0) {
+	    int i = random.nextInt(n);
+	    return "NEAR "+(this.map.getX(i)+random.nextInt(21)-10)+" "+(this.map.getY(i)+random.nextInt(21)-10);
+	}
+	String from = this.map.getLabel(random.nextInt(n));
+	String to = this.map.getLabel(random.nextInt(n));
+	return ((kind < 3) ? "ROUTE " : "DIST ")+from+" "+to;
+    }
+
+    /** Command line client: graphfile port [connections [queries-per-connection [window]]] */
+    public static void main(String[] args) {
+	if ((args.length < 2)||(args.length > 5)) {
+	    System.err.println("Usage: java RouteLoadGenerator graphfile port [connections [queries-per-connection [window]]]");
+	    System.exit(2);
+	}
+	try {
+	    Path path = Paths.get(args[0]);
+	    MapData map = BinaryGraphFile.isBinary(path) ? BinaryGraphFile.read(path) : GraphLoader.read(path);
+	    int port = Integer.parseInt(args[1]);
+	    int connections = (args.length > 2) ? Integer.parseInt(args[2]) : 4;
+	    int queries = (args.length > 3) ? Integer.parseInt(args[3]) : 10000;
+	    int window = (args.length > 4) ? Integer.parseInt(args[4]) : 16;
+	    if (map.numNodes() == 0) {
+		System.err.println("Graph "+args[0]+" has no nodes to query");
+		System.exit(1);
+	    }
+	    RouteLoadGenerator generator = new RouteLoadGenerator(map, port, window);
+	    AtomicReference<IOException> failure = new AtomicReference<IOException>();
+	    Thread[] threads = new Thread[connections];
+	    long start = System.nanoTime();
+	    for (int c = 0; c < connections; c++) {
+		final long seed = c;
+		threads[c] = new Thread(() -> {
+		    try {
+			generator.run(queries, seed);
+		    } catch (IOException e) {
+			failure.compareAndSet(null, e);
+		    }
+		});
+		threads[c].start();
+	    }
+	    for (Thread t : threads) {
+		t.join();
+	    }
+	    double seconds = (System.nanoTime()-start)/1e9;
+	    if (failure.get() != null) {
+		throw failure.get();
+	    }
+	    long total = generator.getLatency().count();
+	    System.out.println(total+" queries over "+connections+" connections in "+String.format(Locale.ROOT, "%.2f", seconds)
+			       +" s ("+String.format(Locale.ROOT, "%.0f", total/seconds)+" queries/s), "+generator.getErrors()+" errors");
+	    System.out.println("Client latency: "+generator.getLatency().summary());
+	    System.out.println("Server latency: "+generator.serverStats());
+	} catch (IOException|NumberFormatException e) {
+	    System.err.println("Problem running load: "+e.getMessage());
+	    System.exit(1);
+	} catch (InterruptedException e) {
+	    System.exit(1);
+	}
+    }
+}
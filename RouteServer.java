@@ -0,0 +1,479 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.lang.reflect.Method;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * Headless route-query service over a local socket.  Clients send one
+ * query per line and get one answer line back per query, in order:
+ *
+ *   ROUTE from to      OK cost label label ...   (or NONE if unreachable)
+ *   DIST from to       OK cost                   (or NONE)
+ *   NEAR x y           OK label x y              (or NONE for an empty map)
+ *   STATS              OK count=... p50=...us ... (server-side latency)
+ *   QUIT               BYE, then the connection closes
+ *
+ * Anything else gets ERR and a reason.  Each connection is served on
+ * its own thread (a virtual thread where the runtime has them).
+ * Clients may pipeline: all the complete lines that have already
+ * arrived are read as one batch, so a line split across packets never
+ * holds up the ones before it.  With a route index every ROUTE and DIST query is
+ * answered from it, since one index query costs far less than a plain
+ * search even when several queries share a source.  Without one, the
+ * queries in a batch that share a source share one search from it,
+ * which stops once their targets are settled.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class RouteServer {
+
+    /** Most lines answered as one batch */
+    private static final int MAX_BATCH = 256;
+
+    /** Longest query line accepted, in bytes */
+    private static final int MAX_LINE = 1 << 16;
+
+    /** Map being served */
+    private Graph<DisplayNodeData<String>, Double> graph;
+
+    /** Labels and ids of the map's compact view */
+    private LabelIndex labels;
+
+    /** Route index for route and distance queries, or null to search every time */
+    private ContractionHierarchy<DisplayNodeData<String>, Double> hierarchy;
+
+    /** Bounding box of the map's nodes, or null for an empty map */
+    private java.awt.Rectangle bounds;
+
+    /** Search state not in use by any connection */
+    private ConcurrentLinkedQueue<PathSearch<DisplayNodeData<String>, Double>> idleSearches;
+
+    /** Server-side latency of every query answered */
+    private LatencyHistogram latency;
+
+    /** Listening socket */
+    private ServerSocket socket;
+
+    /** Runs one task per connection */
+    private ExecutorService connections;
+
+    /** Open client sockets, closed along with the server */
+    private Set<Socket> clients;
+
+    /** Thread accepting connections */
+    private Thread acceptor;
+
+    /** Constructs a server for a map whose node locations are indexed */
+    RouteServer (Graph<DisplayNodeData<String>, Double> graph, ContractionHierarchy<DisplayNodeData<String>, Double> hierarchy) {
+	this.graph = graph;
+	this.labels = LabelIndex.of(graph.freeze());
+	this.hierarchy = hierarchy;
+	for (int i = 0; i < graph.numNodes(); i++) {
+	    java.awt.Point p = graph.getNode(i).getData().getPoint();
+	    if (this.bounds == null) {
+		this.bounds = new java.awt.Rectangle(p);
+	    } else {
+		this.bounds.add(p);
+	    }
+	}
+	this.idleSearches = new ConcurrentLinkedQueue<PathSearch<DisplayNodeData<String>, Double>>();
+	this.latency = new LatencyHistogram();
+	this.clients = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Starts serving a map on a loopback port (0 picks a free one).
+     * The map must not change while it is served.  The route index may
+     * be null.
+     */
+    public static RouteServer open(Graph<DisplayNodeData<String>, Double> graph, ContractionHierarchy<DisplayNodeData<String>, Double> hierarchy, int port) throws IOException {
+	graph.indexLocations(DisplayNodeData::getPoint);
+	RouteServer server = new RouteServer(graph, hierarchy);
+	server.socket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+	server.connections = connectionExecutor();
+	server.acceptor = new Thread(server::acceptLoop, "RouteServer accept");
+	server.acceptor.start();
+	return server;
+    }
+
+    /** Returns the port the server listens on */
+    public int getPort() {
+	return this.socket.getLocalPort();
+    }
+
+    /** Returns the latency of queries answered so far */
+    public LatencyHistogram getLatency() {
+	return this.latency;
+    }
+
+    /** Stops accepting, closes every connection, and waits for the accept thread */
+    public void close() throws IOException {
+	this.socket.close();
+	for (Socket client : this.clients) {
+	    client.close();
+	}
+	this.connections.shutdown();
+	try {
+	    this.acceptor.join();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+    }
+
+    /**
+     * Returns an executor that runs each task on a new virtual thread
+     * if the runtime supports them, and otherwise on a cached pool
+     */
+    static ExecutorService connectionExecutor() {
+	try {
+	    Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+	    return (ExecutorService)virtual.invoke(null);
+	} catch (ReflectiveOperationException|RuntimeException e) {
+	    return Executors.newCachedThreadPool(task -> {
+		Thread t = new Thread(task, "RouteServer connection");
+		t.setDaemon(true);
+		return t;
+	    });
+	}
+    }
+
+    /** Accepts connections until the socket closes */
+    private void acceptLoop() {
+	while (!this.socket.isClosed()) {
+	    try {
+		Socket client = this.socket.accept();
+		this.clients.add(client);
+		this.connections.execute(() -> serve(client));
+	    } catch (IOException|RejectedExecutionException e) {
+		// Closed while waiting; the loop condition ends it
+	    }
+	}
+    }
+
+    /** Answers one connection's queries a batch at a time until it quits or closes */
+    private void serve(Socket client) {
+	try (Socket s = client;
+	     InputStream input = s.getInputStream();
+	     Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), 1 << 16)) {
+	    s.setTcpNoDelay(true);
+	    LineReader in = new LineReader(input);
+	    ArrayList<Query> batch = new ArrayList<Query>();
+	    boolean open = true;
+	    while (open) {
+		String line = in.readLine(true);
+		if (line == null) {
+		    break;
+		}
+		long arrived = System.nanoTime();
+		batch.clear();
+		batch.add(new Query(line, arrived));
+		// Only lines already complete join the batch; never wait for more
+		while ((batch.size() < MAX_BATCH)&&((line = in.readLine(false)) != null)) {
+		    batch.add(new Query(line, arrived));
+		}
+		answer(batch);
+		for (Query q : batch) {
+		    out.write(q.answer);
+		    out.write('\n');
+		    if (q.quit) {
+			open = false;
+			break;
+		    }
+		}
+		out.flush();
+		long done = System.nanoTime();
+		for (Query q : batch) {
+		    this.latency.record(done-q.arrived);
+		}
+	    }
+	} catch (IOException e) {
+	    // Client went away
+	} finally {
+	    this.clients.remove(client);
+	}
+    }
+
+    /** Fills in the answer to every query in a batch */
+    private void answer(List<Query> batch) {
+	// Group route and distance queries by source, in arrival order
+	LinkedHashMap<Integer, ArrayList<Query>> bySource = new LinkedHashMap<Integer, ArrayList<Query>>();
+	for (Query q : batch) {
+	    parse(q);
+	    if ((q.answer == null)&&(q.source >= 0)) {
+		bySource.computeIfAbsent(q.source, k -> new ArrayList<Query>()).add(q);
+	    }
+	}
+	for (Map.Entry<Integer, ArrayList<Query>> group : bySource.entrySet()) {
+	    if (this.hierarchy != null) {
+		for (Query q : group.getValue()) {
+		    answerFromIndex(q);
+		}
+	    } else {
+		answerFromSearch(group.getKey(), group.getValue());
+	    }
+	}
+    }
+
+    /** Reads a query line, answering it at once unless it needs a route search */
+    private void parse(Query q) {
+	String[] words = q.line.trim().split("\\s+");
+	String command = words[0].toUpperCase(Locale.ROOT);
+	try {
+	    if ((command.equals("ROUTE"))||(command.equals("DIST"))) {
+		if (words.length != 3) {
+		    q.answer = "ERR usage: "+command+" from to";
+		    return;
+		}
+		q.route = command.equals("ROUTE");
+		q.source = this.labels.idOf(words[1]);
+		q.target = this.labels.idOf(words[2]);
+		if ((q.source < 0)||(q.target < 0)) {
+		    q.answer = "ERR unknown node "+((q.source < 0) ? words[1] : words[2]);
+		    q.source = -1;
+		}
+	    } else if (command.equals("NEAR")) {
+		if (words.length != 3) {
+		    q.answer = "ERR usage: NEAR x y";
+		    return;
+		}
+		int x = Integer.parseInt(words[1]);
+		int y = Integer.parseInt(words[2]);
+		Graph<DisplayNodeData<String>, Double>.Node node = (this.bounds == null) ? null : this.graph.nearestNode(x, y, nearRadius(x, y));
+		if (node == null) {
+		    q.answer = "NONE";
+		} else {
+		    DisplayNodeData<String> data = node.getData();
+		    q.answer = "OK "+data.getData()+" "+data.getPoint().x+" "+data.getPoint().y;
+		}
+	    } else if (command.equals("STATS")) {
+		q.answer = "OK "+this.latency.summary();
+	    } else if (command.equals("QUIT")) {
+		q.answer = "BYE";
+		q.quit = true;
+	    } else {
+		q.answer = "ERR unknown command "+words[0];
+	    }
+	} catch (NumberFormatException e) {
+	    q.answer = "ERR bad number "+e.getMessage();
+	}
+    }
+
+    /**
+     * Returns a search radius around a point that takes in every node:
+     * its distance to the nodes' bounding box plus the box's diagonal.
+     * Bounds the nearest node search however far away the point is.
+     */
+    private double nearRadius(int x, int y) {
+	double dx = Math.max(0, Math.max((long)this.bounds.x-x, x-((long)this.bounds.x+this.bounds.width)));
+	double dy = Math.max(0, Math.max((long)this.bounds.y-y, y-((long)this.bounds.y+this.bounds.height)));
+	return Math.hypot(dx, dy)+Math.hypot(this.bounds.width, this.bounds.height)+1;
+    }
+
+    /** Answers a route or distance query from the route index */
+    private void answerFromIndex(Query q) {
+	CompactGraph<DisplayNodeData<String>, Double> view = this.labels.getView();
+	Graph<DisplayNodeData<String>, Double>.Node from = view.getNode(q.source);
+	Graph<DisplayNodeData<String>, Double>.Node to = view.getNode(q.target);
+	if (!q.route) {
+	    double cost = this.hierarchy.distance(from, to);
+	    q.answer = (cost == Double.MAX_VALUE) ? "NONE" : "OK "+cost;
+	    return;
+	}
+	ArrayList<Graph<DisplayNodeData<String>, Double>.Edge> route = this.hierarchy.route(from, to);
+	if (route == null) {
+	    q.answer = "NONE";
+	    return;
+	}
+	double cost = 0.0;
+	for (Graph<DisplayNodeData<String>, Double>.Edge edge : route) {
+	    cost += edge.getWeight();
+	}
+	StringBuilder answer = new StringBuilder("OK ").append(cost).append(' ').append(from.getData().getData());
+	Graph<DisplayNodeData<String>, Double>.Node node = from;
+	for (Graph<DisplayNodeData<String>, Double>.Edge edge : route) {
+	    node = edge.opposite(node);
+	    answer.append(' ').append(node.getData().getData());
+	}
+	q.answer = answer.toString();
+    }
+
+    /** Answers queries from one source with a single search that stops once all their targets are settled */
+    private void answerFromSearch(int source, List<Query> queries) {
+	PathSearch<DisplayNodeData<String>, Double> search = this.idleSearches.poll();
+	if (search == null) {
+	    search = new PathSearch<DisplayNodeData<String>, Double>(this.labels.getView());
+	}
+	try {
+	    int[] targets = new int[queries.size()];
+	    for (int k = 0; k < targets.length; k++) {
+		targets[k] = queries.get(k).target;
+	    }
+	    search.run(source, targets);
+	    for (Query q : queries) {
+		double cost = search.cost(q.target);
+		if ((cost == Double.MAX_VALUE)||(!search.isSettled(q.target))) {
+		    q.answer = "NONE";
+		} else if (!q.route) {
+		    q.answer = "OK "+cost;
+		} else {
+		    StringBuilder answer = new StringBuilder("OK ").append(cost);
+		    for (int id : search.path(q.target)) {
+			answer.append(' ').append(this.labels.label(id));
+		    }
+		    q.answer = answer.toString();
+		}
+	    }
+	} finally {
+	    this.idleSearches.add(search);
+	}
+    }
+
+    /**
+     * Splits a byte stream into UTF-8 lines.  Unlike BufferedReader it
+     * can say whether a whole line has already arrived, so the server
+     * can answer the lines it has without waiting on a partial one.
+     */
+    private static class LineReader {
+	/** Stream being read */
+	private final InputStream in;
+
+	/** Bytes read but not yet returned, from start until end */
+	private byte[] buf = new byte[8192];
+	private int start, end;
+
+	/** True once the stream has ended */
+	private boolean eof;
+
+	/** Constructs a reader for a stream */
+	LineReader(InputStream in) {
+	    this.in = in;
+	}
+
+	/**
+	 * Returns the next line, without its terminator.  If no whole line
+	 * has arrived, either waits for one (block) or returns null at
+	 * once.  Blocking also returns null at the end of the stream; a
+	 * last line with no terminator still counts as a line.
+	 */
+	String readLine(boolean block) throws IOException {
+	    int scanned = this.start;
+	    while (true) {
+		for (int i = scanned; i < this.end; i++) {
+		    if (this.buf[i] == '\n') {
+			int stop = ((i > this.start)&&(this.buf[i-1] == '\r')) ? i-1 : i;
+			String line = new String(this.buf, this.start, stop-this.start, StandardCharsets.UTF_8);
+			this.start = i+1;
+			return line;
+		    }
+		}
+		scanned = this.end;
+		if (this.eof) {
+		    if ((!block)||(this.start == this.end)) {
+			return null;
+		    }
+		    String line = new String(this.buf, this.start, this.end-this.start, StandardCharsets.UTF_8);
+		    this.start = this.end;
+		    return line;
+		}
+		if ((!block)&&(this.in.available() <= 0)) {
+		    return null;
+		}
+		scanned -= this.start;
+		if (!fill()) {
+		    this.eof = true;
+		}
+	    }
+	}
+
+	/** Reads more bytes after the ones held, making room first; returns false at the end of the stream */
+	private boolean fill() throws IOException {
+	    int held = this.end-this.start;
+	    if (held >= MAX_LINE) {
+		throw new IOException("Line too long");
+	    }
+	    if (this.start > 0) {
+		System.arraycopy(this.buf, this.start, this.buf, 0, held);
+		this.start = 0;
+		this.end = held;
+	    }
+	    if (this.end == this.buf.length) {
+		this.buf = Arrays.copyOf(this.buf, Math.min(2*this.buf.length, MAX_LINE+1));
+	    }
+	    int n = this.in.read(this.buf, this.end, this.buf.length-this.end);
+	    if (n < 0) {
+		return false;
+	    }
+	    this.end += n;
+	    return true;
+	}
+    }
+
+    /** One query line and its answer */
+    private static class Query {
+	/** Line as received */
+	final String line;
+
+	/** When the line was read, from System.nanoTime() */
+	final long arrived;
+
+	/** True for ROUTE, false for DIST */
+	boolean route;
+
+	/** Source and target ids of a route or distance query still to be answered, or -1 */
+	int source = -1, target = -1;
+
+	/** Answer line, or null if not answered yet */
+	String answer;
+
+	/** True if the connection should close after this answer */
+	boolean quit;
+
+	/** Constructs a query for a line */
+	Query(String line, long arrived) {
+	    this.line = line;
+	    this.arrived = arrived;
+	}
+    }
+
+    /** Command line server: graphfile [port] */
+    public static void main(String[] args) {
+	if ((args.length < 1)||(args.length > 2)) {
+	    System.err.println("Usage: java RouteServer graphfile [port]");
+	    System.exit(2);
+	}
+	try {
+	    Path path = Paths.get(args[0]);
+	    MapData map = BinaryGraphFile.isBinary(path) ? BinaryGraphFile.read(path) : GraphLoader.read(path);
+	    Graph<DisplayNodeData<String>, Double> graph = map.toGraph();
+	    ContractionHierarchy<DisplayNodeData<String>, Double> hierarchy = loadHierarchy(graph, Paths.get(args[0]+".ch"));
+	    int port = (args.length > 1) ? Integer.parseInt(args[1]) : 0;
+	    RouteServer server = open(graph, hierarchy, port);
+	    System.out.println("Serving "+graph.numNodes()+" nodes on "+InetAddress.getLoopbackAddress().getHostAddress()+":"+server.getPort());
+	    Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println("Latency: "+server.getLatency().summary())));
+	} catch (IOException|NumberFormatException e) {
+	    System.err.println("Problem starting server: "+e.getMessage());
+	    System.exit(1);
+	}
+    }
+
+    /** Loads the route index saved next to a graph file, or builds and saves one */
+    private static ContractionHierarchy<DisplayNodeData<String>, Double> loadHierarchy(Graph<DisplayNodeData<String>, Double> graph, Path path) {
+	try {
+	    return ContractionHierarchy.load(graph, path);
+	} catch (IOException e) {
+	    // Missing, unreadable or for another graph: build a fresh one
+	}
+	ContractionHierarchy<DisplayNodeData<String>, Double> built = ContractionHierarchy.build(graph);
+	try {
+	    built.save(path);
+	} catch (IOException e) {
+	    System.err.println("Couldn't save route index: "+e.getMessage());
+	}
+	return built;
+    }
+}
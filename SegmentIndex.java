@@ -0,0 +1,106 @@
+import java.util.*;
+import java.awt.*;
+
+/**
+ * Index over items drawn as line segments, such as edges, for finding
+ * the ones whose bounding boxes meet a rectangle.  Segments are sorted
+ * into levels by length, and each level keeps its segments' midpoints
+ * in a SpatialIndex whose cells are as large as the longest segment
+ * the level holds.  A query then only has to grow the rectangle by
+ * half a cell on each level, so long segments crossing the rectangle
+ * are found without looking at every segment.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class SegmentIndex<T> {
+
+    /** Most levels needed for segments up to the int coordinate range */
+    private static final int MAX_LEVELS = 32;
+
+    /** Longest segment (in either direction) held by the first level */
+    private int baseSize;
+
+    /** Midpoint index for each level; level k holds segments up to baseSize*2^k long */
+    private ArrayList<SpatialIndex<T>> levels;
+
+    /** Bounding box of each indexed segment */
+    private HashMap<T, Rectangle> boxes;
+
+    /** Level each indexed segment is on */
+    private HashMap<T, Integer> levelOf;
+
+    /** Constructs an empty index whose first level holds segments up to baseSize long */
+    SegmentIndex (int baseSize) {
+	if (baseSize <= 0) {
+	    throw new IllegalArgumentException("Base size must be positive");
+	}
+	this.baseSize = baseSize;
+	this.levels = new ArrayList<SpatialIndex<T>>();
+	this.boxes = new HashMap<T, Rectangle>();
+	this.levelOf = new HashMap<T, Integer>();
+    }
+
+    /** Returns number of indexed segments */
+    public int size() {
+	return this.boxes.size();
+    }
+
+    /** Removes every segment */
+    public void clear() {
+	this.levels.clear();
+	this.boxes.clear();
+	this.levelOf.clear();
+    }
+
+    /** Adds a segment between two points (moving it if it is already indexed) */
+    public void insert(T item, Point a, Point b) {
+	remove(item);
+	Rectangle box = new Rectangle(a);
+	box.add(b);
+	long extent = Math.max((long)box.width, (long)box.height);
+	int level = 0;
+	while ((level < MAX_LEVELS-1)&&(((long)this.baseSize << level) < extent)) {
+	    level++;
+	}
+	while (this.levels.size() <= level) {
+	    long size = Math.min((long)this.baseSize << this.levels.size(), Integer.MAX_VALUE);
+	    this.levels.add(new SpatialIndex<T>((int)size));
+	}
+	this.levels.get(level).insert(item, (int)(((long)a.x+b.x) >> 1), (int)(((long)a.y+b.y) >> 1));
+	this.boxes.put(item, box);
+	this.levelOf.put(item, level);
+    }
+
+    /** Removes a segment, if it is indexed */
+    public void remove(T item) {
+	Integer level = this.levelOf.remove(item);
+	if (level != null) {
+	    this.levels.get(level).remove(item);
+	    this.boxes.remove(item);
+	}
+    }
+
+    /** Returns every segment whose bounding box meets a rectangle (edges included) */
+    public ArrayList<T> inRectangle(Rectangle r) {
+	ArrayList<T> found = new ArrayList<T>();
+	for (int level = 0; level < this.levels.size(); level++) {
+	    SpatialIndex<T> index = this.levels.get(level);
+	    if (index.size() == 0) {
+		continue;
+	    }
+	    // A midpoint is at most half the level's size from any point of its segment
+	    long half = Math.min(((long)this.baseSize << level)/2+1, Integer.MAX_VALUE/4);
+	    Rectangle grown = new Rectangle(r);
+	    grown.grow((int)half, (int)half);
+	    for (T item : index.inRectangle(grown)) {
+		Rectangle box = this.boxes.get(item);
+		if ((box.x <= (long)r.x+r.width)&&(r.x <= (long)box.x+box.width)&&(box.y <= (long)r.y+r.height)&&(r.y <= (long)box.y+box.height)) {
+		    found.add(item);
+		}
+	    }
+	}
+	return found;
+    }
+}
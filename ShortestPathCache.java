@@ -0,0 +1,156 @@
+import java.util.*;
+
+/**
+ * Bounded cache of shortest path trees, keyed by source node, for
+ * answering repeated queries from the same start in time proportional
+ * to the path length.  Trees are kept in least recently used order and
+ * the oldest is evicted when the cache is full.  Any change to the
+ * graph (seen through its modification count) invalidates every tree.
+ *
+ * A full tree costs much more than one point-to-point search, so a
+ * source only gets one on its second query; the first is answered
+ * with A* (or Dijkstra stopping at the target, without a heuristic).
+ * Not thread-safe.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class ShortestPathCache<V,E> {
+
+    /** Graph the trees belong to */
+    private Graph<V,E> graph;
+
+    /** Heuristic for first queries, or null for plain Dijkstra */
+    private Heuristic<? super V> heuristic;
+
+    /** Most trees kept */
+    private int capacity;
+
+    /** Cached trees by source, least recently used first */
+    private LinkedHashMap<Graph<V,E>.Node, DijkstraResults<V,E>> trees;
+
+    /** Sources queried once since the last change, least recent first */
+    private LinkedHashMap<Graph<V,E>.Node, Boolean> seenOnce;
+
+    /** Graph modification count the cache contents belong to */
+    private int modCount;
+
+    /** Statistics */
+    private long hits, misses, evictions, invalidations;
+
+    /** Constructs an empty cache holding up to capacity trees */
+    public ShortestPathCache(Graph<V,E> graph, Heuristic<? super V> heuristic, int capacity) {
+	if (capacity <= 0) {
+	    throw new IllegalArgumentException("Capacity must be positive");
+	}
+	this.graph = graph;
+	this.heuristic = heuristic;
+	this.capacity = capacity;
+	this.modCount = graph.getModCount();
+	this.trees = new LinkedHashMap<Graph<V,E>.Node, DijkstraResults<V,E>>(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<Graph<V,E>.Node, DijkstraResults<V,E>> eldest) {
+		    if (size() > ShortestPathCache.this.capacity) {
+			evictions++;
+			return true;
+		    }
+		    return false;
+		}
+	    };
+	this.seenOnce = new LinkedHashMap<Graph<V,E>.Node, Boolean>(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<Graph<V,E>.Node, Boolean> eldest) {
+		    return size() > 4*ShortestPathCache.this.capacity;
+		}
+	    };
+    }
+
+    /**
+     * Returns shortest path results from source that are final at least
+     * for target: read the path with order(target) (which lists target
+     * first) and its cost with getCost(target).
+     */
+    public DijkstraResults<V,E> query(Graph<V,E>.Node source, Graph<V,E>.Node target) {
+	validate();
+	DijkstraResults<V,E> tree = this.trees.get(source);
+	if (tree != null) {
+	    this.hits++;
+	    return tree;
+	}
+	this.misses++;
+	if (this.seenOnce.remove(source) != null) {
+	    // Second query from this source: worth a full tree
+	    tree = this.graph.distance(source);
+	    this.trees.put(source, tree);
+	    return tree;
+	}
+	this.seenOnce.put(source, Boolean.TRUE);
+	return (this.heuristic == null) ? this.graph.distance(source, target) : this.graph.distance(source, target, this.heuristic);
+    }
+
+    /** Returns the full shortest path tree from a source, computing and caching it if needed */
+    public DijkstraResults<V,E> tree(Graph<V,E>.Node source) {
+	validate();
+	DijkstraResults<V,E> tree = this.trees.get(source);
+	if (tree != null) {
+	    this.hits++;
+	    return tree;
+	}
+	this.misses++;
+	this.seenOnce.remove(source);
+	tree = this.graph.distance(source);
+	this.trees.put(source, tree);
+	return tree;
+    }
+
+    /** Empties the cache (statistics are kept) */
+    public void clear() {
+	this.trees.clear();
+	this.seenOnce.clear();
+    }
+
+    /** Returns number of trees cached */
+    public int size() {
+	validate();
+	return this.trees.size();
+    }
+
+    /** Returns number of queries answered from a cached tree */
+    public long getHits() {
+	return this.hits;
+    }
+
+    /** Returns number of queries that needed a search */
+    public long getMisses() {
+	return this.misses;
+    }
+
+    /** Returns number of trees dropped to make room */
+    public long getEvictions() {
+	return this.evictions;
+    }
+
+    /** Returns number of trees dropped because the graph changed */
+    public long getInvalidations() {
+	return this.invalidations;
+    }
+
+    /** Returns the fraction of queries that were hits (0 if there have been none) */
+    public double getHitRate() {
+	long total = this.hits+this.misses;
+	return (total == 0) ? 0.0 : (double)this.hits/total;
+    }
+
+    /** Returns a one-line summary of the statistics */
+    public String toString() {
+	return "ShortestPathCache["+this.trees.size()+"/"+this.capacity+" trees, "+this.hits+" hits, "+this.misses+" misses, "+this.evictions+" evictions, "+this.invalidations+" invalidations]";
+    }
+
+    /** Drops everything if the graph has changed since it was cached */
+    private void validate() {
+	if (this.graph.getModCount() != this.modCount) {
+	    this.invalidations += this.trees.size();
+	    clear();
+	    this.modCount = this.graph.getModCount();
+	}
+    }
+}
@@ -0,0 +1,277 @@
+import java.util.*;
+import java.awt.*;
+
+/**
+ * Uniform grid index over items with integer coordinates.  Each item
+ * lives in the square cell containing its location, so radius and
+ * nearest-item queries only look at the few cells around the query
+ * point instead of every item.
+ *
+ * @author Emma Jordan
+ * @version 10/18/26
+ *
+ */
+public class SpatialIndex<T> {
+
+    /** Side length of a grid cell */
+    private int cellSize;
+
+    /** Items in each occupied cell, keyed by packed cell coordinates */
+    private HashMap<Long, ArrayList<T>> cells;
+
+    /** Indexed location of each item */
+    private HashMap<T, Point> locations;
+
+    /** Bounds of the cells that have held items (may be loose after removals) */
+    private int minCellX, minCellY, maxCellX, maxCellY;
+
+    /** Constructs an empty index with the given cell size */
+    SpatialIndex (int cellSize) {
+	if (cellSize <= 0) {
+	    throw new IllegalArgumentException("Cell size must be positive");
+	}
+	this.cellSize = cellSize;
+	this.cells = new HashMap<Long, ArrayList<T>>();
+	this.locations = new HashMap<T, Point>();
+	resetBounds();
+    }
+
+    /** Returns number of indexed items */
+    public int size() {
+	return this.locations.size();
+    }
+
+    /** Returns the indexed location of an item, or null if it isn't indexed */
+    public Point getLocation(T item) {
+	Point p = this.locations.get(item);
+	return (p == null) ? null : new Point(p);
+    }
+
+    /** Removes every item */
+    public void clear() {
+	this.cells.clear();
+	this.locations.clear();
+	resetBounds();
+    }
+
+    /** Adds an item at a location (moving it if it is already indexed) */
+    public void insert(T item, int x, int y) {
+	Point old = this.locations.get(item);
+	if (old != null) {
+	    move(item, x, y);
+	    return;
+	}
+	this.locations.put(item, new Point(x, y));
+	addToCell(item, x, y);
+    }
+
+    /** Removes an item, if it is indexed */
+    public void remove(T item) {
+	Point old = this.locations.remove(item);
+	if (old != null) {
+	    removeFromCell(item, old.x, old.y);
+	}
+    }
+
+    /** Updates an item's location, changing cell only if it has to */
+    public void move(T item, int x, int y) {
+	Point p = this.locations.get(item);
+	if (p == null) {
+	    insert(item, x, y);
+	    return;
+	}
+	if ((cell(p.x) != cell(x))||(cell(p.y) != cell(y))) {
+	    removeFromCell(item, p.x, p.y);
+	    addToCell(item, x, y);
+	}
+	p.setLocation(x, y);
+    }
+
+    /** Returns all items strictly closer than radius to the given location */
+    public ArrayList<T> within(int x, int y, double radius) {
+	ArrayList<T> found = new ArrayList<T>();
+	if (radius <= 0) {
+	    return found;
+	}
+	int x0 = Math.max(cell(x-radius), this.minCellX);
+	int x1 = Math.min(cell(x+radius), this.maxCellX);
+	int y0 = Math.max(cell(y-radius), this.minCellY);
+	int y1 = Math.min(cell(y+radius), this.maxCellY);
+	double r2 = radius*radius;
+	for (int cx = x0; cx <= x1; cx++) {
+	    for (int cy = y0; cy <= y1; cy++) {
+		ArrayList<T> items = this.cells.get(key(cx, cy));
+		if (items == null) {
+		    continue;
+		}
+		for (T item : items) {
+		    Point p = this.locations.get(item);
+		    if (distanceSq(p, x, y) < r2) {
+			found.add(item);
+		    }
+		}
+	    }
+	}
+	return found;
+    }
+
+    /**
+     * Returns all items inside a rectangle (edges included).  Looks up
+     * each cell the rectangle covers, or if the rectangle covers more
+     * cells than are occupied, goes through the occupied cells instead,
+     * so a view of the whole map costs no more than the items in it.
+     */
+    public ArrayList<T> inRectangle(Rectangle r) {
+	ArrayList<T> found = new ArrayList<T>();
+	long x0 = Math.max(cell(r.x), this.minCellX);
+	long x1 = Math.min(cell((double)r.x+r.width), this.maxCellX);
+	long y0 = Math.max(cell(r.y), this.minCellY);
+	long y1 = Math.min(cell((double)r.y+r.height), this.maxCellY);
+	if ((x0 > x1)||(y0 > y1)) {
+	    return found;
+	}
+	if ((x1-x0+1)*(y1-y0+1) > this.cells.size()) {
+	    for (Map.Entry<Long, ArrayList<T>> e : this.cells.entrySet()) {
+		long k = e.getKey();
+		int cx = (int)(k >> 32);
+		int cy = (int)k;
+		if ((cx >= x0)&&(cx <= x1)&&(cy >= y0)&&(cy <= y1)) {
+		    collect(e.getValue(), r, found);
+		}
+	    }
+	    return found;
+	}
+	for (long cx = x0; cx <= x1; cx++) {
+	    for (long cy = y0; cy <= y1; cy++) {
+		ArrayList<T> items = this.cells.get(key((int)cx, (int)cy));
+		if (items != null) {
+		    collect(items, r, found);
+		}
+	    }
+	}
+	return found;
+    }
+
+    /** Adds the items from a cell that are inside a rectangle to a list */
+    private void collect(ArrayList<T> items, Rectangle r, ArrayList<T> found) {
+	for (T item : items) {
+	    Point p = this.locations.get(item);
+	    if ((p.x >= r.x)&&(p.y >= r.y)&&(p.x <= (long)r.x+r.width)&&(p.y <= (long)r.y+r.height)) {
+		found.add(item);
+	    }
+	}
+    }
+
+    /**
+     * Returns the item nearest to the given location that is strictly
+     * closer than maxDistance, or null if there is none.  Searches rings
+     * of cells outward from the query cell, starting at the first ring
+     * that reaches the occupied cells and visiting only the part of each
+     * ring inside them, and stops once no unsearched cell could hold
+     * anything nearer than the best item so far.  A query far from the
+     * items costs no more than one next to them.
+     */
+    public T nearest(int x, int y, double maxDistance) {
+	T best = null;
+	double bestSq = maxDistance*maxDistance;
+	if (this.locations.isEmpty()) {
+	    return null;
+	}
+	long qx = cell(x);
+	long qy = cell(y);
+	// Rings before this one lie wholly outside the occupied cells
+	long firstRing = Math.max(Math.max(this.minCellX-qx, qx-this.maxCellX), Math.max(this.minCellY-qy, qy-this.maxCellY));
+	firstRing = Math.max(firstRing, 0);
+	// Rings beyond this can't hold anything inside the indexed area
+	long lastRing = Math.max(Math.max(qx-this.minCellX, this.maxCellX-qx), Math.max(qy-this.minCellY, this.maxCellY-qy));
+	for (long ring = firstRing; ring <= lastRing; ring++) {
+	    // Every point in this ring is at least (ring-1) cells away
+	    double gap = (double)(ring-1)*this.cellSize;
+	    if ((ring > 0)&&(gap > 0)&&(gap*gap >= bestSq)) {
+		break;
+	    }
+	    long x0 = Math.max(qx-ring, this.minCellX);
+	    long x1 = Math.min(qx+ring, this.maxCellX);
+	    long y0 = Math.max(qy-ring, this.minCellY);
+	    long y1 = Math.min(qy+ring, this.maxCellY);
+	    for (long cx = x0; cx <= x1; cx++) {
+		boolean side = (cx == qx-ring)||(cx == qx+ring);
+		for (long cy = y0; cy <= y1; cy++) {
+		    if ((!side)&&(cy > qy-ring)&&(cy < qy+ring)) {
+			// Inside the ring: only its top and bottom are new
+			cy = qy+ring-1;
+			continue;
+		    }
+		    ArrayList<T> items = this.cells.get(key((int)cx, (int)cy));
+		    if (items == null) {
+			continue;
+		    }
+		    for (T item : items) {
+			double d = distanceSq(this.locations.get(item), x, y);
+			if (d < bestSq) {
+			    bestSq = d;
+			    best = item;
+			}
+		    }
+		}
+	    }
+	}
+	return best;
+    }
+
+    /** Adds an item to the cell holding a location */
+    private void addToCell(T item, int x, int y) {
+	int cx = cell(x);
+	int cy = cell(y);
+	ArrayList<T> items = this.cells.get(key(cx, cy));
+	if (items == null) {
+	    items = new ArrayList<T>(4);
+	    this.cells.put(key(cx, cy), items);
+	}
+	items.add(item);
+	this.minCellX = Math.min(this.minCellX, cx);
+	this.minCellY = Math.min(this.minCellY, cy);
+	this.maxCellX = Math.max(this.maxCellX, cx);
+	this.maxCellY = Math.max(this.maxCellY, cy);
+    }
+
+    /** Removes an item from the cell holding a location */
+    private void removeFromCell(T item, int x, int y) {
+	Long k = key(cell(x), cell(y));
+	ArrayList<T> items = this.cells.get(k);
+	if (items != null) {
+	    items.remove(item);
+	    if (items.isEmpty()) {
+		this.cells.remove(k);
+	    }
+	}
+	if (this.locations.isEmpty()) {
+	    resetBounds();
+	}
+    }
+
+    /** Empties the occupied-cell bounds */
+    private void resetBounds() {
+	this.minCellX = Integer.MAX_VALUE;
+	this.minCellY = Integer.MAX_VALUE;
+	this.maxCellX = Integer.MIN_VALUE;
+	this.maxCellY = Integer.MIN_VALUE;
+    }
+
+    /** Returns the cell coordinate of a location coordinate */
+    private int cell(double v) {
+	return (int)Math.floor(v/this.cellSize);
+    }
+
+    /** Packs two cell coordinates into a map key */
+    private static long key(int cx, int cy) {
+	return (((long)cx) << 32)|(cy & 0xffffffffL);
+    }
+
+    /** Returns squared distance from a point to a location */
+    private static double distanceSq(Point p, int x, int y) {
+	double dx = (double)p.x-x;
+	double dy = (double)p.y-y;
+	return dx*dx+dy*dy;
+    }
+}